@@ -0,0 +1,66 @@
+package ragnardb.benchmarks;
+
+import gw.lang.Gosu;
+import gw.lang.reflect.TypeSystem;
+import gw.util.StreamUtil;
+import ragnardb.RagnarDB;
+import ragnardb.plugin.SQLPlugin;
+import ragnardb.plugin.SQLTableTypeInfo;
+import ragnardb.runtime.SQLRecord;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.sql.SQLException;
+
+/**
+ * The Bench.ddl schema, loaded through the SQL plugin and created in an in-memory H2 database. The type
+ * system is initialized once per benchmark JVM, and statement logging is kept off so that the measured loops
+ * don't time console output.
+ */
+final class BenchmarkSchema
+{
+  static final String DB_URL = "jdbc:h2:mem:benchmarks;DB_CLOSE_DELAY=-1";
+
+  private static SQLTableTypeInfo _contacts;
+
+  private BenchmarkSchema()
+  {
+  }
+
+  static synchronized SQLTableTypeInfo contacts() throws SQLException, IOException
+  {
+    RagnarDB.setLogStatements( false );
+    if( _contacts == null )
+    {
+      Gosu.init();
+      TypeSystem.pushTypeLoader( TypeSystem.getGlobalModule(), new SQLPlugin( TypeSystem.getCurrentModule() ) );
+      RagnarDB.setDBUrl( DB_URL );
+      RagnarDB.execStatement( readResource( "/ragnardb/benchmarks/Bench.ddl" ) );
+      _contacts = (SQLTableTypeInfo)TypeSystem.getByFullName( "ragnardb.benchmarks.Bench.Contact" ).getTypeInfo();
+    }
+    return _contacts;
+  }
+
+  static void deleteContacts() throws SQLException
+  {
+    RagnarDB.execStatement( "DELETE FROM CONTACTS" );
+  }
+
+  static SQLRecord newContact( SQLTableTypeInfo contacts, int i )
+  {
+    SQLRecord contact = contacts.getRecordFactory().get();
+    contact.setRawValue( "first_name", "First" + i );
+    contact.setRawValue( "last_name", "Last" + i );
+    contact.setRawValue( "age", i % 100 );
+    return contact;
+  }
+
+  static String readResource( String name ) throws IOException
+  {
+    try( Reader reader = new InputStreamReader( BenchmarkSchema.class.getResourceAsStream( name ) ) )
+    {
+      return StreamUtil.getContent( reader );
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package ragnardb.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ragnardb.plugin.SQLTableTypeInfo;
+import ragnardb.runtime.SQLRecord;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts the given number of new records, one create() call each or with a single createAll().
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class InsertBenchmark
+{
+  @Param( {"1", "100"} )
+  public int records;
+
+  private SQLTableTypeInfo _contacts;
+
+  @Setup
+  public void setUp() throws SQLException, IOException
+  {
+    _contacts = BenchmarkSchema.contacts();
+  }
+
+  @Setup( Level.Iteration )
+  public void emptyTable() throws SQLException
+  {
+    BenchmarkSchema.deleteContacts();
+  }
+
+  @Benchmark
+  public int create()
+  {
+    for( SQLRecord contact : newContacts() )
+    {
+      contact.create();
+    }
+    return records;
+  }
+
+  @Benchmark
+  public int createAll()
+  {
+    return SQLRecord.createAll( newContacts() );
+  }
+
+  private List<SQLRecord> newContacts()
+  {
+    List<SQLRecord> contacts = new ArrayList<>( records );
+    for( int i = 0; i < records; i++ )
+    {
+      contacts.add( BenchmarkSchema.newContact( _contacts, i ) );
+    }
+    return contacts;
+  }
+}
@@ -0,0 +1,92 @@
+package ragnardb.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ragnardb.parser.SQLParser;
+import ragnardb.parser.SQLTokenizer;
+import ragnardb.parser.TokenType;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizes and parses the statement corpora of the parser tests, one statement at a time as those tests do.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ParserBenchmark
+{
+  @Param( {"createtablestatements.txt", "selectstatements.txt"} )
+  public String corpus;
+
+  private String[] _statements;
+  private char[][] _chars;
+
+  @Setup
+  public void setUp() throws IOException
+  {
+    // joined without line breaks, as the parser tests read them
+    _statements = BenchmarkSchema.readResource( "/" + corpus ).replaceAll( "\r?\n", "" ).split( ";" );
+    _chars = new char[_statements.length][];
+    for( int i = 0; i < _statements.length; i++ )
+    {
+      _chars[i] = _statements[i].toCharArray();
+    }
+  }
+
+  @Benchmark
+  public int tokenizeReader()
+  {
+    int tokens = 0;
+    for( String statement : _statements )
+    {
+      tokens += countTokens( new SQLTokenizer( new StringReader( statement ) ) );
+    }
+    return tokens;
+  }
+
+  @Benchmark
+  public int tokenizeScanner()
+  {
+    int tokens = 0;
+    for( char[] statement : _chars )
+    {
+      tokens += countTokens( new SQLTokenizer( statement, SQLTokenizer.MEMORY_FILE ) );
+    }
+    return tokens;
+  }
+
+  @Benchmark
+  public void parse( Blackhole blackhole )
+  {
+    for( char[] statement : _chars )
+    {
+      blackhole.consume( new SQLParser( new SQLTokenizer( statement, SQLTokenizer.MEMORY_FILE ) ).parse() );
+    }
+  }
+
+  private static int countTokens( SQLTokenizer tokenizer )
+  {
+    int tokens = 0;
+    while( tokenizer.get().getType() != TokenType.EOF )
+    {
+      tokens++;
+    }
+    return tokens;
+  }
+}
@@ -0,0 +1,82 @@
+package ragnardb.benchmarks;
+
+import gw.lang.reflect.IMethodCallHandler;
+import gw.lang.reflect.java.JavaTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ragnardb.RagnarDB;
+import ragnardb.plugin.SQLTableTypeInfo;
+import ragnardb.runtime.SQLQuery;
+import ragnardb.runtime.SQLRecord;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads records back from a CONTACTS table of the given size: all of them through the All query, and one at a
+ * time through the generated findByAge method.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class RecordBenchmark
+{
+  @Param( {"100", "10000"} )
+  public int rows;
+
+  private SQLQuery<SQLRecord> _all;
+  private IMethodCallHandler _findByAge;
+  private int _age;
+
+  @Setup
+  public void setUp() throws SQLException, IOException
+  {
+    SQLTableTypeInfo contacts = BenchmarkSchema.contacts();
+    BenchmarkSchema.deleteContacts();
+    List<List<Object>> values = new ArrayList<>();
+    for( int i = 0; i < rows; i++ )
+    {
+      values.add( Arrays.asList( "First" + i, "Last" + i, i % 100 ) );
+    }
+    RagnarDB.executeBatch( "INSERT INTO CONTACTS (first_name, last_name, age) VALUES (?, ?, ?)", values, RagnarDB.getBatchSize() );
+
+    _all = (SQLQuery<SQLRecord>)contacts.getProperty( "All" ).getAccessor().getValue( null );
+    _findByAge = contacts.getMethod( "findByAge", JavaTypes.pINT() ).getCallHandler();
+  }
+
+  @Benchmark
+  public int hydrateAll( Blackhole blackhole )
+  {
+    int count = 0;
+    for( SQLRecord record : _all )
+    {
+      blackhole.consume( record );
+      count++;
+    }
+    return count;
+  }
+
+  @Benchmark
+  public Object findBy()
+  {
+    _age = (_age + 1) % 100;
+    return _findByAge.handleCall( null, _age );
+  }
+}
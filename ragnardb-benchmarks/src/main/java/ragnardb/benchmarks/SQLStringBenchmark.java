@@ -0,0 +1,81 @@
+package ragnardb.benchmarks;
+
+import gw.lang.reflect.IPropertyInfo;
+import gw.lang.reflect.IType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ragnardb.runtime.ITypeToSQLMetadata;
+import ragnardb.runtime.SQLConstraint;
+import ragnardb.runtime.SQLQuery;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders queries whose where clause is a constraint tree of the given depth. The compiled SQL is memoized per
+ * query, so each invocation renders a new query over the same tree.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SQLStringBenchmark
+{
+  private static final ITypeToSQLMetadata METADATA = new ITypeToSQLMetadata()
+  {
+    @Override
+    public String getTableForType( IType type )
+    {
+      return "CONTACTS";
+    }
+
+    @Override
+    public String getColumnForProperty( IPropertyInfo pi )
+    {
+      return "age";
+    }
+  };
+
+  @Param( {"4", "16", "64"} )
+  public int depth;
+
+  private SQLConstraint _constraint;
+
+  @Setup
+  public void setUp()
+  {
+    SQLConstraint constraint = SQLConstraint.isComparator( null, 0, "=" );
+    for( int i = 1; i < depth; i++ )
+    {
+      SQLConstraint next = i % 3 == 0
+                           ? SQLConstraint.isIn( null, Arrays.asList( i, i + 1 ) )
+                           : SQLConstraint.isComparator( null, i, ">" );
+      constraint = i % 2 == 0 ? constraint.andAlso( next ) : SQLConstraint.not( constraint ).orElse( next );
+    }
+    _constraint = constraint;
+  }
+
+  @Benchmark
+  public String getSQLString()
+  {
+    return new SQLQuery<Object>( METADATA, null ).where( _constraint ).getSQLString();
+  }
+
+  @Benchmark
+  public List<Object> getArgs()
+  {
+    return new SQLQuery<Object>( METADATA, null ).where( _constraint ).getArgs();
+  }
+}
@@ -0,0 +1,461 @@
+package ragnardb;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of JDBC connections to a single database url.
+ *
+ * Connections handed out by {@link #borrow()} are proxies; closing one resets it and returns the
+ * underlying connection to the pool rather than closing it. Idle connections are reused most recently
+ * used first, validated before being handed out again, and evicted once they have been idle for longer
+ * than the max idle time (the pool never evicts below its min size).
+ *
+ * Each pooled connection also keeps an LRU cache of the statements prepared on it (see {@link StatementCache}),
+ * so sql that is prepared over and over is only parsed and planned once per connection.
+ */
+public class ConnectionPool
+{
+  private final String _url;
+  private final Deque<PooledConnection> _idle = new ArrayDeque<>();
+  private int _open;
+  private boolean _closed;
+
+  private int _minSize = 0;
+  private int _maxSize = 10;
+  private long _maxIdleTime = 10 * 60 * 1000;
+  private long _maxWait = 30 * 1000;
+  private int _validationTimeout = 5;
+  private int _statementCacheSize = 64;
+
+  private final AtomicLong _statementCacheHits = new AtomicLong();
+  private final AtomicLong _statementCacheMisses = new AtomicLong();
+  private volatile QueryMetrics _metrics;
+
+  public ConnectionPool( String url )
+  {
+    _url = url;
+  }
+
+  public String getUrl()
+  {
+    return _url;
+  }
+
+  public synchronized int getMinSize()
+  {
+    return _minSize;
+  }
+
+  /**
+   * @param minSize the number of connections idle eviction will always leave open
+   */
+  public synchronized void setMinSize( int minSize )
+  {
+    _minSize = minSize;
+  }
+
+  public synchronized int getMaxSize()
+  {
+    return _maxSize;
+  }
+
+  /**
+   * @param maxSize the maximum number of connections, idle or in use, this pool will open
+   */
+  public synchronized void setMaxSize( int maxSize )
+  {
+    if( maxSize < 1 )
+    {
+      throw new IllegalArgumentException( "Max pool size must be at least 1" );
+    }
+    _maxSize = maxSize;
+    notifyAll();
+  }
+
+  public synchronized long getMaxIdleTime()
+  {
+    return _maxIdleTime;
+  }
+
+  /**
+   * @param maxIdleTime milliseconds a connection may sit idle before it is eligible for eviction
+   */
+  public synchronized void setMaxIdleTime( long maxIdleTime )
+  {
+    _maxIdleTime = maxIdleTime;
+  }
+
+  public synchronized long getMaxWait()
+  {
+    return _maxWait;
+  }
+
+  /**
+   * @param maxWait milliseconds {@link #borrow()} will block waiting for a connection when the pool is exhausted
+   */
+  public synchronized void setMaxWait( long maxWait )
+  {
+    _maxWait = maxWait;
+  }
+
+  public synchronized int getValidationTimeout()
+  {
+    return _validationTimeout;
+  }
+
+  /**
+   * @param validationTimeout seconds to wait on {@link Connection#isValid(int)} when validating an idle connection
+   */
+  public synchronized void setValidationTimeout( int validationTimeout )
+  {
+    _validationTimeout = validationTimeout;
+  }
+
+  public synchronized int getStatementCacheSize()
+  {
+    return _statementCacheSize;
+  }
+
+  /**
+   * @param statementCacheSize the number of prepared statements cached per connection; 0 disables caching
+   */
+  public synchronized void setStatementCacheSize( int statementCacheSize )
+  {
+    _statementCacheSize = statementCacheSize;
+  }
+
+  /**
+   * @return the number of statements prepared through this pool that were served from a statement cache
+   */
+  public long getStatementCacheHits()
+  {
+    return _statementCacheHits.get();
+  }
+
+  /**
+   * @return the number of statements prepared through this pool that had to be prepared by the driver
+   */
+  public long getStatementCacheMisses()
+  {
+    return _statementCacheMisses.get();
+  }
+
+  /**
+   * @param metrics where to also record statement cache hits and misses by sql shape, or null
+   */
+  void setQueryMetrics( QueryMetrics metrics )
+  {
+    _metrics = metrics;
+  }
+
+  void statementCacheHit( String sql )
+  {
+    _statementCacheHits.incrementAndGet();
+    QueryMetrics metrics = _metrics;
+    if( metrics != null && metrics.isEnabled() )
+    {
+      metrics.shapeOf( sql ).statementCacheHit();
+    }
+  }
+
+  void statementCacheMiss( String sql )
+  {
+    _statementCacheMisses.incrementAndGet();
+    QueryMetrics metrics = _metrics;
+    if( metrics != null && metrics.isEnabled() )
+    {
+      metrics.shapeOf( sql ).statementCacheMiss();
+    }
+  }
+
+  public synchronized int getIdleCount()
+  {
+    return _idle.size();
+  }
+
+  public synchronized int getActiveCount()
+  {
+    return _open - _idle.size();
+  }
+
+  /**
+   * Borrows a connection, blocking for up to the max wait time if every connection is in use.
+   * Close the returned connection to give it back to the pool.
+   */
+  public Connection borrow() throws SQLException
+  {
+    long deadline = System.currentTimeMillis() + getMaxWait();
+    while( true )
+    {
+      PooledConnection pooled;
+      synchronized( this )
+      {
+        if( _closed )
+        {
+          throw new SQLException( "Connection pool for " + _url + " has been closed" );
+        }
+        closeAll( evictIdle() );
+        pooled = _idle.pollFirst();
+        if( pooled == null )
+        {
+          if( _open < _maxSize )
+          {
+            _open++;
+          }
+          else
+          {
+            long remaining = deadline - System.currentTimeMillis();
+            if( remaining <= 0 )
+            {
+              throw new SQLException( "Timed out after " + _maxWait + "ms waiting for a connection to " + _url +
+                                      " (max pool size is " + _maxSize + ")" );
+            }
+            try
+            {
+              wait( remaining );
+            }
+            catch( InterruptedException e )
+            {
+              Thread.currentThread().interrupt();
+              throw new SQLException( "Interrupted while waiting for a connection to " + _url, e );
+            }
+            continue;
+          }
+        }
+      }
+
+      if( pooled == null )
+      {
+        try
+        {
+          return new PooledConnection( DriverManager.getConnection( _url ) ).lease();
+        }
+        catch( SQLException | RuntimeException e )
+        {
+          discarded();
+          throw e;
+        }
+      }
+
+      if( isValid( pooled ) )
+      {
+        return pooled.lease();
+      }
+      discard( pooled );
+    }
+  }
+
+  /**
+   * Closes all idle connections and refuses further borrows. Connections currently in use are closed
+   * as they are returned.
+   */
+  public void close()
+  {
+    List<PooledConnection> idle;
+    synchronized( this )
+    {
+      _closed = true;
+      idle = new ArrayList<>( _idle );
+      _idle.clear();
+      _open -= idle.size();
+      notifyAll();
+    }
+    closeAll( idle );
+  }
+
+  private boolean isValid( PooledConnection pooled )
+  {
+    try
+    {
+      return pooled._connection.isValid( getValidationTimeout() );
+    }
+    catch( SQLException e )
+    {
+      return false;
+    }
+  }
+
+  private void release( PooledConnection pooled )
+  {
+    try
+    {
+      Connection connection = pooled._connection;
+      if( connection.isClosed() )
+      {
+        discarded();
+        return;
+      }
+      if( !connection.getAutoCommit() )
+      {
+        connection.rollback();
+        connection.setAutoCommit( true );
+      }
+      connection.clearWarnings();
+    }
+    catch( SQLException e )
+    {
+      discard( pooled );
+      return;
+    }
+
+    synchronized( this )
+    {
+      if( !_closed )
+      {
+        pooled._lastUsed = System.currentTimeMillis();
+        _idle.addFirst( pooled );
+        notifyAll();
+        return;
+      }
+    }
+    discard( pooled );
+  }
+
+  private void discard( PooledConnection pooled )
+  {
+    discarded();
+    closeQuietly( pooled );
+  }
+
+  private synchronized void discarded()
+  {
+    _open--;
+    notifyAll();
+  }
+
+  /**
+   * Removes connections that have been idle too long, oldest first. Must be called holding the lock;
+   * the caller closes the returned connections.
+   */
+  private List<PooledConnection> evictIdle()
+  {
+    List<PooledConnection> evicted = new ArrayList<>();
+    long cutoff = System.currentTimeMillis() - _maxIdleTime;
+    for( Iterator<PooledConnection> it = _idle.descendingIterator(); it.hasNext() && _open > _minSize; )
+    {
+      PooledConnection pooled = it.next();
+      if( pooled._lastUsed >= cutoff )
+      {
+        break;
+      }
+      it.remove();
+      _open--;
+      evicted.add( pooled );
+    }
+    return evicted;
+  }
+
+  private static void closeAll( List<PooledConnection> connections )
+  {
+    for( PooledConnection pooled : connections )
+    {
+      closeQuietly( pooled );
+    }
+  }
+
+  private static void closeQuietly( PooledConnection pooled )
+  {
+    try
+    {
+      pooled._connection.close();
+    }
+    catch( SQLException e )
+    {
+      // already unusable, nothing more to do
+    }
+  }
+
+  private class PooledConnection
+  {
+    private final Connection _connection;
+    private final StatementCache _statements;
+    private long _lastUsed;
+
+    PooledConnection( Connection connection )
+    {
+      _connection = connection;
+      _statements = new StatementCache( connection, ConnectionPool.this );
+    }
+
+    Connection lease()
+    {
+      return (Connection)Proxy.newProxyInstance( Connection.class.getClassLoader(),
+                                                 new Class[]{Connection.class},
+                                                 new Lease( this ) );
+    }
+  }
+
+  /**
+   * The handle given to a borrower. Each borrow gets a fresh lease so that a stale reference to a
+   * returned connection cannot reach the underlying connection after it has been handed to someone else.
+   */
+  private class Lease implements InvocationHandler
+  {
+    private final PooledConnection _pooled;
+    private boolean _returned;
+
+    Lease( PooledConnection pooled )
+    {
+      _pooled = pooled;
+    }
+
+    @Override
+    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+    {
+      switch( method.getName() )
+      {
+        case "close":
+          if( !_returned )
+          {
+            _returned = true;
+            release( _pooled );
+          }
+          return null;
+        case "isClosed":
+          return _returned || _pooled._connection.isClosed();
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode( proxy );
+        case "toString":
+          return "Pooled " + _pooled._connection;
+      }
+      if( _returned )
+      {
+        throw new SQLException( "Connection has already been returned to the pool" );
+      }
+      if( method.getName().equals( "prepareStatement" ) )
+      {
+        if( args.length == 1 )
+        {
+          return _pooled._statements.prepare( (Connection)proxy, (String)args[0], Statement.NO_GENERATED_KEYS );
+        }
+        if( args.length == 2 && method.getParameterTypes()[1] == int.class )
+        {
+          return _pooled._statements.prepare( (Connection)proxy, (String)args[0], (Integer)args[1] );
+        }
+      }
+      try
+      {
+        return method.invoke( _pooled._connection, args );
+      }
+      catch( InvocationTargetException e )
+      {
+        throw e.getCause();
+      }
+    }
+  }
+}
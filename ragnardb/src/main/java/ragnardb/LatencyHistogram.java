@@ -0,0 +1,78 @@
+package ragnardb;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of durations in nanoseconds. Buckets are log-linear: each power of two is split into
+ * eight equal buckets, so a percentile read back from it is within about 6% of the recorded value, over the
+ * whole range of a long, in a fixed 4k of counters.
+ */
+class LatencyHistogram
+{
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray _counts = new AtomicLongArray( BUCKETS );
+
+  void record( long nanos )
+  {
+    _counts.incrementAndGet( indexOf( Math.max( 0, nanos ) ) );
+  }
+
+  /**
+   * @param percentile between 0 and 1
+   * @return the given percentile of the recorded durations, or 0 if none have been recorded
+   */
+  long getPercentile( double percentile )
+  {
+    long[] counts = new long[BUCKETS];
+    long total = 0;
+    for( int i = 0; i < BUCKETS; i++ )
+    {
+      counts[i] = _counts.get( i );
+      total += counts[i];
+    }
+    if( total == 0 )
+    {
+      return 0;
+    }
+    long rank = Math.max( 1, (long)Math.ceil( percentile * total ) );
+    long seen = 0;
+    for( int i = 0; i < BUCKETS; i++ )
+    {
+      seen += counts[i];
+      if( seen >= rank )
+      {
+        return valueOf( i );
+      }
+    }
+    return valueOf( BUCKETS - 1 );
+  }
+
+  private static int indexOf( long value )
+  {
+    if( value < SUB_BUCKETS )
+    {
+      return (int)value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros( value );
+    int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * @return the middle of the range of values counted in the given bucket
+   */
+  private static long valueOf( int index )
+  {
+    if( index < SUB_BUCKETS )
+    {
+      return index;
+    }
+    int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    long low = (SUB_BUCKETS + (index % SUB_BUCKETS)) * width;
+    return low + width / 2;
+  }
+}
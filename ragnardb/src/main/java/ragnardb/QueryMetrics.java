@@ -0,0 +1,393 @@
+package ragnardb;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Statistics for the statements run through {@link RagnarDB}, grouped by the shape of their sql: the sql with
+ * literals replaced by ? and lists of bind markers collapsed, so that the same query with different values or
+ * a different number of IN arguments is counted together.
+ *
+ * For each shape it counts executions and failures, keeps a latency histogram, and totals the rows read back
+ * through RagnarDB's cursors, the approximate size of the values bound, the time spent waiting to borrow a
+ * pooled connection, and the statement cache hits and misses of its prepares.
+ *
+ * The registry is available from {@link RagnarDB#getQueryMetrics()} and over JMX as {@value #OBJECT_NAME}.
+ * Once {@link #getMaxShapes()} shapes are being tracked, further shapes are counted together as "(other)".
+ */
+public class QueryMetrics implements QueryMetricsMXBean
+{
+  public static final String OBJECT_NAME = "ragnardb:type=QueryMetrics";
+  public static final String OTHER_SHAPE = "(other)";
+
+  // sql text to its shape, so repeated sql is only normalized once; bounded in case sql is built with literals
+  private static final int MAX_CACHED_SQL = 10000;
+
+  private static final Pattern STRING_LITERAL = Pattern.compile( "'(?:[^']|'')*'" );
+  private static final Pattern NUMBER_LITERAL = Pattern.compile( "\\b\\d+(?:\\.\\d+)?(?:[eE][+-]?\\d+)?\\b" );
+  private static final Pattern WHITESPACE = Pattern.compile( "\\s+" );
+  private static final Pattern BIND_LIST = Pattern.compile( "\\?(?:\\s*,\\s*\\?)+" );
+
+  private final ConcurrentHashMap<String, Shape> _shapes = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Shape> _shapesBySql = new ConcurrentHashMap<>();
+  private volatile boolean _enabled = true;
+  private volatile int _maxShapes = 1000;
+
+  @Override
+  public boolean isEnabled()
+  {
+    return _enabled;
+  }
+
+  /**
+   * @param enabled false to stop recording; statements are then handed out without the metering wrapper
+   */
+  @Override
+  public void setEnabled( boolean enabled )
+  {
+    _enabled = enabled;
+  }
+
+  @Override
+  public int getMaxShapes()
+  {
+    return _maxShapes;
+  }
+
+  @Override
+  public void setMaxShapes( int maxShapes )
+  {
+    if( maxShapes < 1 )
+    {
+      throw new IllegalArgumentException( "Max shapes must be at least 1" );
+    }
+    _maxShapes = maxShapes;
+  }
+
+  /**
+   * @return a snapshot of every shape recorded, the one with the most total execution time first
+   */
+  @Override
+  public List<Snapshot> getShapes()
+  {
+    List<Snapshot> snapshots = new ArrayList<>();
+    for( Shape shape : _shapes.values() )
+    {
+      snapshots.add( shape.snapshot() );
+    }
+    snapshots.sort( Comparator.comparingLong( Snapshot::getTotalTimeNanos ).reversed() );
+    return snapshots;
+  }
+
+  /**
+   * @return a snapshot of the shape the given sql belongs to, or null if nothing of that shape has been recorded
+   */
+  public Snapshot getShape( String sql )
+  {
+    Shape shape = _shapes.get( normalize( sql ) );
+    return shape == null ? null : shape.snapshot();
+  }
+
+  @Override
+  public void reset()
+  {
+    _shapesBySql.clear();
+    _shapes.clear();
+  }
+
+  /**
+   * @return the shape the given sql is recorded under
+   */
+  public static String normalize( String sql )
+  {
+    String shape = STRING_LITERAL.matcher( sql ).replaceAll( "?" );
+    shape = NUMBER_LITERAL.matcher( shape ).replaceAll( "?" );
+    shape = WHITESPACE.matcher( shape ).replaceAll( " " ).trim();
+    return BIND_LIST.matcher( shape ).replaceAll( "?, ..." );
+  }
+
+  /**
+   * Records the rows a cursor read from the results of a statement handed out by {@link RagnarDB}. Cursors
+   * call this once, as they close; it does nothing for other statements.
+   */
+  public static void rowsFetched( Statement statement, long rows )
+  {
+    StatementHandle.rowsFetched( statement, rows );
+  }
+
+  Shape shapeOf( String sql )
+  {
+    Shape shape = _shapesBySql.get( sql );
+    if( shape == null )
+    {
+      String key = normalize( sql );
+      shape = _shapes.get( key );
+      if( shape == null )
+      {
+        shape = _shapes.computeIfAbsent( _shapes.size() < _maxShapes ? key : OTHER_SHAPE, Shape::new );
+      }
+      if( _shapesBySql.size() < MAX_CACHED_SQL )
+      {
+        _shapesBySql.put( sql, shape );
+      }
+    }
+    return shape;
+  }
+
+  /**
+   * @return roughly how many bytes the given bind value takes: two a character for text, the width of numbers
+   * and the length of byte arrays
+   */
+  static long sizeOf( Object value )
+  {
+    if( value == null )
+    {
+      return 0;
+    }
+    if( value instanceof CharSequence )
+    {
+      return 2L * ((CharSequence)value).length();
+    }
+    if( value instanceof byte[] )
+    {
+      return ((byte[])value).length;
+    }
+    if( value instanceof Boolean || value instanceof Byte )
+    {
+      return 1;
+    }
+    if( value instanceof Short || value instanceof Character )
+    {
+      return 2;
+    }
+    if( value instanceof Integer || value instanceof Float )
+    {
+      return 4;
+    }
+    if( value instanceof Long || value instanceof Double || value instanceof java.util.Date )
+    {
+      return 8;
+    }
+    return 2L * value.toString().length();
+  }
+
+  void registerMBean()
+  {
+    try
+    {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      try
+      {
+        server.registerMBean( this, new ObjectName( OBJECT_NAME ) );
+      }
+      catch( InstanceAlreadyExistsException e )
+      {
+        // RagnarDB loaded again in another class loader, e.g. a second web app
+        server.registerMBean( this, new ObjectName( OBJECT_NAME + ",id=" + System.identityHashCode( this ) ) );
+      }
+    }
+    catch( JMException | SecurityException e )
+    {
+      // metrics are still available from RagnarDB.getQueryMetrics()
+    }
+  }
+
+  /**
+   * The counters for one shape of sql.
+   */
+  static final class Shape
+  {
+    private final String _sql;
+    private final LongAdder _executions = new LongAdder();
+    private final LongAdder _failures = new LongAdder();
+    private final LongAdder _totalNanos = new LongAdder();
+    private final LatencyHistogram _latency = new LatencyHistogram();
+    private final LongAdder _rowsFetched = new LongAdder();
+    private final LongAdder _bytesBound = new LongAdder();
+    private final LongAdder _connectionsAcquired = new LongAdder();
+    private final LongAdder _connectionWaitNanos = new LongAdder();
+    private final LongAdder _statementCacheHits = new LongAdder();
+    private final LongAdder _statementCacheMisses = new LongAdder();
+
+    Shape( String sql )
+    {
+      _sql = sql;
+    }
+
+    void executed( long nanos, long bytesBound, boolean failed )
+    {
+      _executions.increment();
+      if( failed )
+      {
+        _failures.increment();
+      }
+      _totalNanos.add( nanos );
+      _latency.record( nanos );
+      _bytesBound.add( bytesBound );
+    }
+
+    void rowsFetched( long rows )
+    {
+      _rowsFetched.add( rows );
+    }
+
+    void connectionAcquired( long waitNanos )
+    {
+      _connectionsAcquired.increment();
+      _connectionWaitNanos.add( waitNanos );
+    }
+
+    void statementCacheHit()
+    {
+      _statementCacheHits.increment();
+    }
+
+    void statementCacheMiss()
+    {
+      _statementCacheMisses.increment();
+    }
+
+    Snapshot snapshot()
+    {
+      return new Snapshot( _sql, _executions.sum(), _failures.sum(), _totalNanos.sum(),
+                           _latency.getPercentile( 0.5 ), _latency.getPercentile( 0.99 ), _rowsFetched.sum(),
+                           _bytesBound.sum(), _connectionsAcquired.sum(), _connectionWaitNanos.sum(),
+                           _statementCacheHits.sum(), _statementCacheMisses.sum() );
+    }
+  }
+
+  /**
+   * The counters of one shape at a point in time. Durations are in nanoseconds.
+   */
+  public static final class Snapshot
+  {
+    private final String _sql;
+    private final long _executions;
+    private final long _failures;
+    private final long _totalTimeNanos;
+    private final long _p50Nanos;
+    private final long _p99Nanos;
+    private final long _rowsFetched;
+    private final long _bytesBound;
+    private final long _connectionsAcquired;
+    private final long _connectionWaitNanos;
+    private final long _statementCacheHits;
+    private final long _statementCacheMisses;
+
+    Snapshot( String sql, long executions, long failures, long totalTimeNanos, long p50Nanos, long p99Nanos,
+              long rowsFetched, long bytesBound, long connectionsAcquired, long connectionWaitNanos,
+              long statementCacheHits, long statementCacheMisses )
+    {
+      _sql = sql;
+      _executions = executions;
+      _failures = failures;
+      _totalTimeNanos = totalTimeNanos;
+      _p50Nanos = p50Nanos;
+      _p99Nanos = p99Nanos;
+      _rowsFetched = rowsFetched;
+      _bytesBound = bytesBound;
+      _connectionsAcquired = connectionsAcquired;
+      _connectionWaitNanos = connectionWaitNanos;
+      _statementCacheHits = statementCacheHits;
+      _statementCacheMisses = statementCacheMisses;
+    }
+
+    /**
+     * @return the normalized sql of this shape
+     */
+    public String getSql()
+    {
+      return _sql;
+    }
+
+    public long getExecutions()
+    {
+      return _executions;
+    }
+
+    /**
+     * @return the executions that threw
+     */
+    public long getFailures()
+    {
+      return _failures;
+    }
+
+    public long getTotalTimeNanos()
+    {
+      return _totalTimeNanos;
+    }
+
+    public long getP50Nanos()
+    {
+      return _p50Nanos;
+    }
+
+    public long getP99Nanos()
+    {
+      return _p99Nanos;
+    }
+
+    public long getRowsFetched()
+    {
+      return _rowsFetched;
+    }
+
+    public long getBytesBound()
+    {
+      return _bytesBound;
+    }
+
+    /**
+     * @return the number of times a statement of this shape borrowed a connection from the pool
+     */
+    public long getConnectionsAcquired()
+    {
+      return _connectionsAcquired;
+    }
+
+    /**
+     * @return the total time spent borrowing those connections, including opening new ones
+     */
+    public long getConnectionWaitNanos()
+    {
+      return _connectionWaitNanos;
+    }
+
+    public long getStatementCacheHits()
+    {
+      return _statementCacheHits;
+    }
+
+    public long getStatementCacheMisses()
+    {
+      return _statementCacheMisses;
+    }
+
+    /**
+     * @return the fraction of prepares served from a statement cache, or 0 if none went through one
+     */
+    public double getStatementCacheHitRate()
+    {
+      long prepares = _statementCacheHits + _statementCacheMisses;
+      return prepares == 0 ? 0 : (double)_statementCacheHits / prepares;
+    }
+
+    @Override
+    public String toString()
+    {
+      return _sql + " : " + _executions + " executions, p50 " + _p50Nanos / 1000 + "us, p99 " + _p99Nanos / 1000 +
+             "us, " + _rowsFetched + " rows";
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package ragnardb;
+
+import java.util.List;
+
+/**
+ * The JMX view of {@link QueryMetrics}, registered as {@value QueryMetrics#OBJECT_NAME}.
+ */
+public interface QueryMetricsMXBean
+{
+  boolean isEnabled();
+
+  void setEnabled( boolean enabled );
+
+  int getMaxShapes();
+
+  void setMaxShapes( int maxShapes );
+
+  List<QueryMetrics.Snapshot> getShapes();
+
+  void reset();
+}
@@ -1,6 +1,7 @@
 package ragnardb;
 
 import java.sql.*;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -10,7 +11,23 @@ public class RagnarDB
 
   private static String g_DBURL = "";
 
-  public static void setDBUrl(String url) {
+  private static ConnectionPool g_POOL;
+
+  private static int g_BATCH_SIZE = 500;
+
+  private static boolean g_LOG_STATEMENTS = Boolean.getBoolean( "ragnardb.logStatements" );
+
+  private static final QueryMetrics g_METRICS = new QueryMetrics();
+
+  static {
+    g_METRICS.registerMBean();
+  }
+
+  public static synchronized void setDBUrl(String url) {
+    if(g_POOL != null && !g_POOL.getUrl().equals(url)) {
+      g_POOL.close();
+      g_POOL = null;
+    }
     g_DBURL = url;
   }
 
@@ -18,14 +35,68 @@ public class RagnarDB
     return g_DBURL;
   }
 
+  /**
+   * The pool backing {@link #getConnection()} for the current db url; configure its sizing and timeouts here.
+   */
+  public static synchronized ConnectionPool getConnectionPool() {
+    if(g_POOL == null) {
+      g_POOL = new ConnectionPool(g_DBURL);
+      g_POOL.setQueryMetrics(g_METRICS);
+    }
+    return g_POOL;
+  }
+
+  /**
+   * Per sql shape statistics for the statements run through RagnarDB, also registered over JMX as
+   * {@value QueryMetrics#OBJECT_NAME}.
+   */
+  public static QueryMetrics getQueryMetrics() {
+    return g_METRICS;
+  }
+
+  public static boolean isLogStatements() {
+    return g_LOG_STATEMENTS;
+  }
+
+  /**
+   * @param logStatements whether to print each statement and its bind values to System.out as it is prepared;
+   *                      off unless the ragnardb.logStatements system property is true
+   */
+  public static void setLogStatements(boolean logStatements) {
+    g_LOG_STATEMENTS = logStatements;
+  }
+
+  /**
+   * Returns the connection established on this thread, if any, otherwise borrows one from the pool.
+   * Closing a borrowed connection returns it to the pool.
+   */
   public static Connection getConnection() throws SQLException
   {
     Connection c = _THREAD_CONNECTION.get();
     if(c != null) {
       return c;
     } else {
-      return DriverManager.getConnection(g_DBURL);
+      return getConnectionPool().borrow();
+    }
+  }
+
+  public static int getBatchSize() {
+    return g_BATCH_SIZE;
+  }
+
+  /**
+   * @param batchSize the number of rows bulk operations such as {@link ragnardb.runtime.SQLRecord#createAll(Iterable)}
+   *                  send to the database per batch
+   */
+  public static void setBatchSize(int batchSize) {
+    if(batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be at least 1");
     }
+    g_BATCH_SIZE = batchSize;
+  }
+
+  public static boolean hasThreadConnection() {
+    return _THREAD_CONNECTION.get() != null;
   }
 
   public static void establishConnection() throws SQLException {
@@ -40,31 +111,204 @@ public class RagnarDB
     _THREAD_CONNECTION.remove();
   }
 
+  /**
+   * Work run against a connection by {@link #inTransaction(Work)}.
+   */
+  public interface Work<R> {
+    R run(Connection conn) throws SQLException;
+  }
+
+  /**
+   * Runs the given work with the given connection standing in for this thread's connection, so that statements
+   * prepared by the work run on it, then restores whatever connection the thread had before. The connection is
+   * not closed.
+   */
+  public static <R> R onConnection( Connection conn, Work<R> work ) throws SQLException
+  {
+    Connection previous = _THREAD_CONNECTION.get();
+    _THREAD_CONNECTION.set( conn );
+    try
+    {
+      return work.run( conn );
+    }
+    finally
+    {
+      if( previous == null )
+      {
+        _THREAD_CONNECTION.remove();
+      }
+      else
+      {
+        _THREAD_CONNECTION.set( previous );
+      }
+    }
+  }
+
+  /**
+   * Runs the given work in a single transaction on this thread's connection, establishing one for the
+   * duration if there is none. If the work fails none of its changes are kept; inside an enclosing
+   * transaction only its own changes are rolled back, to a savepoint.
+   */
+  public static <R> R inTransaction( Work<R> work ) throws SQLException
+  {
+    boolean ownsConnection = !hasThreadConnection();
+    if( ownsConnection )
+    {
+      establishConnection();
+    }
+    try
+    {
+      Connection conn = getConnection();
+      boolean autoCommit = conn.getAutoCommit();
+      Savepoint start = null;
+      if( autoCommit )
+      {
+        conn.setAutoCommit( false );
+      }
+      else
+      {
+        start = conn.setSavepoint();
+      }
+      try
+      {
+        R result = work.run( conn );
+        if( autoCommit )
+        {
+          conn.commit();
+        }
+        return result;
+      }
+      catch( SQLException | RuntimeException e )
+      {
+        if( autoCommit )
+        {
+          conn.rollback();
+        }
+        else
+        {
+          conn.rollback( start );
+        }
+        throw e;
+      }
+      finally
+      {
+        if( autoCommit )
+        {
+          conn.setAutoCommit( true );
+        }
+      }
+    }
+    finally
+    {
+      if( ownsConnection )
+      {
+        releaseConnection();
+      }
+    }
+  }
+
+  /**
+   * Runs a statement once per row of bind values with a single prepared statement, sending the rows to the
+   * database in batches of at most batchSize, in a single transaction (see {@link #inTransaction(Work)}).
+   *
+   * @return the update count of each row, in order
+   */
+  public static int[] executeBatch( String sql, Iterable<? extends List<?>> rows, int batchSize ) throws SQLException
+  {
+    if( batchSize < 1 )
+    {
+      throw new IllegalArgumentException( "Batch size must be at least 1" );
+    }
+    return inTransaction( conn -> {
+      int[] counts = new int[16];
+      int count = 0;
+      try( PreparedStatement stmt = prepareStatement( sql, Collections.emptyList() ) )
+      {
+        int pending = 0;
+        for( List<?> row : rows )
+        {
+          setVals( row, stmt );
+          stmt.addBatch();
+          if( ++pending == batchSize )
+          {
+            counts = append( counts, count, stmt.executeBatch() );
+            count += pending;
+            pending = 0;
+          }
+        }
+        if( pending > 0 )
+        {
+          counts = append( counts, count, stmt.executeBatch() );
+          count += pending;
+        }
+      }
+      return Arrays.copyOf( counts, count );
+    } );
+  }
+
+  private static int[] append( int[] counts, int count, int[] batch )
+  {
+    if( count + batch.length > counts.length )
+    {
+      counts = Arrays.copyOf( counts, Math.max( counts.length * 2, count + batch.length ) );
+    }
+    System.arraycopy( batch, 0, counts, count, batch.length );
+    return counts;
+  }
+
+  /**
+   * Prepares and binds a statement. Callers must close the returned statement; when it was prepared on a
+   * pooled connection, closing it also returns that connection to the pool.
+   */
   public static PreparedStatement prepareStatement( String sql, List vals) throws SQLException
   {
-    Connection conn = getConnection();
-//    System.out.println(sql + " @RagnarDB 27"); debugging logging info
-    maybeLog(sql, vals);
-    PreparedStatement stmt = conn.prepareStatement( sql );
-    setVals(vals, stmt);
-    return stmt;
+    return prepareStatement( sql, vals, Statement.NO_GENERATED_KEYS );
   }
 
   public static PreparedStatement prepareStatement( String sql, List vals, int autoGeneratedKeys ) throws SQLException
   {
-    Connection conn = getConnection();
-    maybeLog(sql, vals);
-    PreparedStatement stmt = conn.prepareStatement( sql, autoGeneratedKeys );
-    setVals(vals, stmt);
-    return stmt;
+    QueryMetrics.Shape shape = g_METRICS.isEnabled() ? g_METRICS.shapeOf( sql ) : null;
+    Connection conn = _THREAD_CONNECTION.get();
+    boolean pooled = conn == null;
+    if( pooled )
+    {
+      long start = System.nanoTime();
+      conn = getConnectionPool().borrow();
+      if( shape != null )
+      {
+        shape.connectionAcquired( System.nanoTime() - start );
+      }
+    }
+    try
+    {
+      maybeLog(sql, vals);
+      PreparedStatement stmt = conn.prepareStatement( sql, autoGeneratedKeys );
+      if( pooled || shape != null )
+      {
+        stmt = StatementHandle.wrap( stmt, pooled ? conn : null, shape );
+      }
+      setVals(vals, stmt);
+      return stmt;
+    }
+    catch( SQLException | RuntimeException e )
+    {
+      if( pooled )
+      {
+        conn.close();
+      }
+      throw e;
+    }
   }
 
   private static void maybeLog( String sql, List vals )
   {
-    System.out.println("RagnarDB SQL : " + sql + " : " + vals);
+    if( g_LOG_STATEMENTS )
+    {
+      System.out.println("RagnarDB SQL : " + sql + " : " + vals);
+    }
   }
 
-  private static void setVals( List vals, PreparedStatement stmt ) throws SQLException
+  public static void setVals( List vals, PreparedStatement stmt ) throws SQLException
   {
     for( int i = 0; i < vals.size(); i++ )
     {
@@ -89,16 +333,20 @@ public class RagnarDB
 
   public static boolean execStatement( String setup ) throws SQLException
   {
-    PreparedStatement stmt = prepareStatement( setup, Collections.emptyList() );
-    return stmt.execute();
+    try( PreparedStatement stmt = prepareStatement( setup, Collections.emptyList() ) )
+    {
+      return stmt.execute();
+    }
   }
 
   public static int count( String tableName ) throws SQLException
   {
-    Connection conn = getConnection();
-    PreparedStatement stmt = prepareStatement( "SELECT COUNT(1) FROM " + tableName, Collections.emptyList() );
-    ResultSet resultSet = stmt.executeQuery();
-    resultSet.next();
-    return resultSet.getInt( 1 );
+    try( PreparedStatement stmt = prepareStatement( "SELECT COUNT(1) FROM " + tableName, Collections.emptyList() ) )
+    {
+      ResultSet resultSet = stmt.executeQuery();
+      resultSet.next();
+      QueryMetrics.rowsFetched( stmt, 1 );
+      return resultSet.getInt( 1 );
+    }
   }
 }
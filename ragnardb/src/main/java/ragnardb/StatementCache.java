@@ -0,0 +1,302 @@
+package ragnardb;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An LRU cache of prepared statements for a single pooled connection, keyed by sql text and
+ * auto generated keys mode.
+ *
+ * Statements handed out by {@link #prepare(Connection, String, int)} are checked out until closed; closing one
+ * closes any result sets it produced, clears its parameters and pending batch, restores the max rows, fetch size,
+ * query timeout and fetch direction it was prepared with, and returns it to the cache instead of closing it. A
+ * statement that cannot be reset is dropped from the cache. If the same sql is prepared again while its cached
+ * statement is still checked out (e.g. a nested iteration over the same query), a fresh, uncached statement is
+ * returned.
+ *
+ * Every statement handed out answers {@code getConnection()} with the lease it was prepared through, never the
+ * underlying connection.
+ */
+class StatementCache
+{
+  private final Connection _connection;
+  private final ConnectionPool _pool;
+  private final LinkedHashMap<Key, CachedStatement> _statements = new LinkedHashMap<>( 16, 0.75f, true );
+
+  StatementCache( Connection connection, ConnectionPool pool )
+  {
+    _connection = connection;
+    _pool = pool;
+  }
+
+  /**
+   * @param lease the connection handle the statement is being prepared through
+   */
+  synchronized PreparedStatement prepare( Connection lease, String sql, int autoGeneratedKeys ) throws SQLException
+  {
+    int maxSize = _pool.getStatementCacheSize();
+    if( maxSize <= 0 )
+    {
+      return checkOut( lease, _connection.prepareStatement( sql, autoGeneratedKeys ), null );
+    }
+
+    Key key = new Key( sql, autoGeneratedKeys );
+    CachedStatement cached = _statements.get( key );
+    if( cached != null && !cached._checkedOut && !cached._statement.isClosed() )
+    {
+      _pool.statementCacheHit( sql );
+      cached._checkedOut = true;
+      return checkOut( lease, cached._statement, cached );
+    }
+
+    _pool.statementCacheMiss( sql );
+    PreparedStatement statement = _connection.prepareStatement( sql, autoGeneratedKeys );
+    if( cached != null && cached._checkedOut )
+    {
+      return checkOut( lease, statement, null );
+    }
+    try
+    {
+      cached = new CachedStatement( key, statement );
+    }
+    catch( SQLException e )
+    {
+      // the driver cannot report the statement's defaults, so it could not be reset for reuse
+      return checkOut( lease, statement, null );
+    }
+    _statements.put( key, cached );
+    evict( maxSize );
+    cached._checkedOut = true;
+    return checkOut( lease, statement, cached );
+  }
+
+  private PreparedStatement checkOut( Connection lease, PreparedStatement statement, CachedStatement cached )
+  {
+    return (PreparedStatement)Proxy.newProxyInstance( PreparedStatement.class.getClassLoader(),
+                                                      new Class[]{PreparedStatement.class},
+                                                      new CheckedOut( lease, statement, cached ) );
+  }
+
+  synchronized int size()
+  {
+    return _statements.size();
+  }
+
+  private void evict( int maxSize )
+  {
+    for( Iterator<CachedStatement> it = _statements.values().iterator(); it.hasNext() && _statements.size() > maxSize; )
+    {
+      CachedStatement cached = it.next();
+      if( !cached._checkedOut )
+      {
+        it.remove();
+        cached.closeQuietly();
+      }
+    }
+  }
+
+  private synchronized void checkIn( CachedStatement cached )
+  {
+    cached._checkedOut = false;
+    if( !cached.reset() )
+    {
+      _statements.remove( cached._key, cached );
+      cached.closeQuietly();
+      return;
+    }
+    evict( _pool.getStatementCacheSize() );
+  }
+
+  private static class Key
+  {
+    private final String _sql;
+    private final int _autoGeneratedKeys;
+
+    Key( String sql, int autoGeneratedKeys )
+    {
+      _sql = sql;
+      _autoGeneratedKeys = autoGeneratedKeys;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+      if( !(o instanceof Key) )
+      {
+        return false;
+      }
+      Key key = (Key)o;
+      return _autoGeneratedKeys == key._autoGeneratedKeys && _sql.equals( key._sql );
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return Objects.hash( _sql, _autoGeneratedKeys );
+    }
+  }
+
+  private static class CachedStatement
+  {
+    private final Key _key;
+    private final PreparedStatement _statement;
+    private final int _maxRows;
+    private final int _fetchSize;
+    private final int _queryTimeout;
+    private final int _fetchDirection;
+    private boolean _checkedOut;
+
+    CachedStatement( Key key, PreparedStatement statement ) throws SQLException
+    {
+      _key = key;
+      _statement = statement;
+      _maxRows = statement.getMaxRows();
+      _fetchSize = statement.getFetchSize();
+      _queryTimeout = statement.getQueryTimeout();
+      _fetchDirection = statement.getFetchDirection();
+    }
+
+    /**
+     * Undoes whatever the last user of the statement left behind.
+     *
+     * @return false if the statement could not be reset and must not be reused
+     */
+    boolean reset()
+    {
+      try
+      {
+        if( _statement.isClosed() )
+        {
+          return false;
+        }
+        _statement.clearParameters();
+        _statement.clearBatch();
+        if( _statement.getMaxRows() != _maxRows )
+        {
+          _statement.setMaxRows( _maxRows );
+        }
+        if( _statement.getFetchSize() != _fetchSize )
+        {
+          _statement.setFetchSize( _fetchSize );
+        }
+        if( _statement.getQueryTimeout() != _queryTimeout )
+        {
+          _statement.setQueryTimeout( _queryTimeout );
+        }
+        if( _statement.getFetchDirection() != _fetchDirection )
+        {
+          _statement.setFetchDirection( _fetchDirection );
+        }
+        return true;
+      }
+      catch( SQLException e )
+      {
+        return false;
+      }
+    }
+
+    void closeQuietly()
+    {
+      try
+      {
+        _statement.close();
+      }
+      catch( SQLException e )
+      {
+        // the connection is likely gone, nothing more to do
+      }
+    }
+  }
+
+  /**
+   * The handle for one use of a statement. Result sets opened through it are closed when it is closed, so the
+   * next user of a cached statement starts clean; an uncached statement is simply closed.
+   */
+  private class CheckedOut implements InvocationHandler
+  {
+    private final Connection _lease;
+    private final PreparedStatement _statement;
+    private final CachedStatement _cached;
+    private final List<ResultSet> _resultSets = new ArrayList<>( 1 );
+    private boolean _closed;
+
+    /**
+     * @param cached the cache entry to check the statement back into, or null if it is not cached
+     */
+    CheckedOut( Connection lease, PreparedStatement statement, CachedStatement cached )
+    {
+      _lease = lease;
+      _statement = statement;
+      _cached = cached;
+    }
+
+    @Override
+    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+    {
+      switch( method.getName() )
+      {
+        case "close":
+          if( !_closed )
+          {
+            _closed = true;
+            try
+            {
+              for( ResultSet resultSet : _resultSets )
+              {
+                resultSet.close();
+              }
+            }
+            finally
+            {
+              if( _cached != null )
+              {
+                checkIn( _cached );
+              }
+              else
+              {
+                _statement.close();
+              }
+            }
+          }
+          return null;
+        case "isClosed":
+          return _closed || _statement.isClosed();
+        case "getConnection":
+          return _lease;
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode( proxy );
+      }
+      if( _closed )
+      {
+        throw new SQLException( "Statement has already been closed" );
+      }
+      Object result;
+      try
+      {
+        result = method.invoke( _statement, args );
+      }
+      catch( InvocationTargetException e )
+      {
+        throw e.getCause();
+      }
+      if( result instanceof ResultSet )
+      {
+        _resultSets.add( (ResultSet)result );
+      }
+      return result;
+    }
+  }
+}
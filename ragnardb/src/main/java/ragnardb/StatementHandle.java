@@ -0,0 +1,133 @@
+package ragnardb;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+/**
+ * The statement handed out by {@link RagnarDB#prepareStatement(String, java.util.List, int)}. When prepared on a
+ * borrowed connection, closing it also returns that connection to the pool. When metered, it times each
+ * execution and totals the size of the values bound for it into the statement's {@link QueryMetrics} shape.
+ */
+class StatementHandle implements InvocationHandler
+{
+  private final PreparedStatement _statement;
+  private final Connection _borrowed;
+  private final QueryMetrics.Shape _shape;
+  private long _bytesBound;
+  private boolean _closed;
+
+  private StatementHandle( PreparedStatement statement, Connection borrowed, QueryMetrics.Shape shape )
+  {
+    _statement = statement;
+    _borrowed = borrowed;
+    _shape = shape;
+  }
+
+  /**
+   * @param borrowed the pooled connection to return when the statement is closed, or null
+   * @param shape    the shape to record executions against, or null
+   */
+  static PreparedStatement wrap( PreparedStatement statement, Connection borrowed, QueryMetrics.Shape shape )
+  {
+    return (PreparedStatement)Proxy.newProxyInstance( PreparedStatement.class.getClassLoader(),
+                                                      new Class[]{PreparedStatement.class},
+                                                      new StatementHandle( statement, borrowed, shape ) );
+  }
+
+  static void rowsFetched( Statement statement, long rows )
+  {
+    if( rows > 0 && Proxy.isProxyClass( statement.getClass() ) )
+    {
+      InvocationHandler handler = Proxy.getInvocationHandler( statement );
+      if( handler instanceof StatementHandle && ((StatementHandle)handler)._shape != null )
+      {
+        ((StatementHandle)handler)._shape.rowsFetched( rows );
+      }
+    }
+  }
+
+  @Override
+  public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+  {
+    String name = method.getName();
+    switch( name )
+    {
+      case "close":
+        if( !_closed )
+        {
+          _closed = true;
+          try
+          {
+            _statement.close();
+          }
+          finally
+          {
+            if( _borrowed != null )
+            {
+              _borrowed.close();
+            }
+          }
+        }
+        return null;
+      case "isClosed":
+        return _closed || _statement.isClosed();
+      case "getConnection":
+        if( _borrowed != null )
+        {
+          return _borrowed;
+        }
+        break;
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode( proxy );
+    }
+    if( _shape != null )
+    {
+      if( name.startsWith( "execute" ) )
+      {
+        return execute( method, args );
+      }
+      if( name.startsWith( "set" ) && args != null && args.length >= 2 && !name.equals( "setNull" ) )
+      {
+        _bytesBound += QueryMetrics.sizeOf( args[1] );
+      }
+    }
+    return delegate( method, args );
+  }
+
+  private Object execute( Method method, Object[] args ) throws Throwable
+  {
+    long bytesBound = _bytesBound;
+    _bytesBound = 0;
+    boolean failed = true;
+    long start = System.nanoTime();
+    try
+    {
+      Object result = delegate( method, args );
+      failed = false;
+      return result;
+    }
+    finally
+    {
+      _shape.executed( System.nanoTime() - start, bytesBound, failed );
+    }
+  }
+
+  private Object delegate( Method method, Object[] args ) throws Throwable
+  {
+    try
+    {
+      return method.invoke( _statement, args );
+    }
+    catch( InvocationTargetException e )
+    {
+      throw e.getCause();
+    }
+  }
+}
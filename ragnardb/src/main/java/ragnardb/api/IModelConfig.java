@@ -2,6 +2,7 @@ package ragnardb.api;
 
 
 import gw.lang.reflect.features.IPropertyReference;
+import ragnardb.runtime.ColumnLayout;
 import ragnardb.runtime.IFieldValidator;
 import ragnardb.runtime.SQLRecord;
 
@@ -17,6 +18,14 @@ public interface IModelConfig
   void setIdColumn(String config);
   String getIdColumn();
 
+  /**
+   * @return the slot layout records of this table store their values in, or null if they use a map
+   */
+  default ColumnLayout getColumnLayout()
+  {
+    return null;
+  }
+
   <T> void addValidation( IPropertyReference<Object, T> propertyReference, IFieldValidator<T> validator );
   <T> void validateFormat(IPropertyReference<Object, T> propertyReference, String regexp);
   <T> void requiredFields(List<IPropertyReference<Object, T>> propertyReferences);
@@ -204,15 +204,20 @@ public class SQLParser {
     errCount = 0;
     errPosition = -1;
 
-    if (isAValidStartSymbol()) {
+    try {
+      if (isAValidStartSymbol()) {
+        return parseInternal();
+      }
+      error(currentToken, "Expecting a SQL statement (ex CREATE.., ALTER.., DROP..., ...)");
+      // sync
+      do {
+        next();
+      } while (!isAValidStartSymbol());
       return parseInternal();
+    } finally {
+      // the tree must not keep the tokenizer's source alive, even if parsing stopped short of the end
+      _tokenizer.release();
     }
-    error(currentToken, "Expecting a SQL statement (ex CREATE.., ALTER.., DROP..., ...)");
-    // sync
-    do {
-      next();
-    } while (!isAValidStartSymbol());
-    return parseInternal();
   }
 
   private SQL parseInternal() {
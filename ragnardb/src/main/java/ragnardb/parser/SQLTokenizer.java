@@ -3,9 +3,21 @@ package ragnardb.parser;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class SQLTokenizer {
   private BufferedReader reader;
+  // in scanner mode the whole source is in this buffer, and identifiers are read out of it in place
+  private char[] source;
+  private int pos;
+  private int end;
+  private int mark;
+  private char[] scratch;
+  // identifier tokens whose text is still a range of the source
+  private final List<Token> inPlaceTokens = new ArrayList<>();
   private int line;
   private int col;
   private int offset;
@@ -27,6 +39,48 @@ public class SQLTokenizer {
     next();
   }
 
+  /**
+   * Creates a tokenizer in scanner mode, over a source that is already in memory. Identifier tokens keep
+   * their text as a range of the source until it is asked for.
+   */
+  public SQLTokenizer(char[] source, String fileName) {
+    this(CharBuffer.wrap(source), fileName);
+  }
+
+  /**
+   * Creates a tokenizer in scanner mode over the remaining characters of the given buffer. A buffer that is
+   * not backed by an array, such as one decoded from a mapped file, is copied first.
+   */
+  public SQLTokenizer(CharBuffer source, String fileName) {
+    if(source.hasArray()) {
+      this.source = source.array();
+      pos = source.arrayOffset() + source.position();
+      end = source.arrayOffset() + source.limit();
+    } else {
+      this.source = new char[source.remaining()];
+      source.duplicate().get(this.source);
+      pos = 0;
+      end = this.source.length;
+    }
+    line = 1;
+    col = 0;
+    offset = 0;
+    EOF = false;
+    this.fileName = fileName;
+    next();
+  }
+
+  /**
+   * Copies the text of every identifier read so far out of the source, so that tokens kept after scanning
+   * (e.g. in a parse tree) don't hold on to the whole source. Done automatically on reaching the end.
+   */
+  public void release() {
+    for(Token tok : inPlaceTokens) {
+      tok.materialize();
+    }
+    inPlaceTokens.clear();
+  }
+
   public String getFileName() {
     return fileName;
 
@@ -81,6 +135,7 @@ public class SQLTokenizer {
     }
 
     if(EOF) {
+      release();
       tok = new Token(TokenType.EOF, line, col, offset);
     } else if(ch == '/') { //Need to add in // Comments
       next();
@@ -277,32 +332,62 @@ public class SQLTokenizer {
   }
 
   private Token identifier() {
-    StringBuilder sb = new StringBuilder();
     final int l = line;
     final int c = col;
     final int o = offset;
+    final int start = mark;
 
-    sb.append(ch);
-    next();
-
-    while(isIdent(ch) || (isNumberOrDot(ch) && ch != '.') ) {
-      sb.append(ch);
+    int length = 0;
+    int stop;
+    do {
+      if(source == null) {
+        keep(length, ch);
+      }
+      length++;
+      stop = mark + 1;
       next();
+    } while(isIdent(ch) || (isNumberOrDot(ch) && ch != '.'));
+
+    // the text can be left in the source unless a stray carriage return was skipped inside it
+    boolean inPlace = source != null && stop - start == length;
+    if(source != null && !inPlace) {
+      int kept = 0;
+      for(int i = start; i < stop; i++) {
+        if(source[i] != '\r') {
+          keep(kept++, source[i]);
+        }
+      }
     }
-    String s = sb.toString().toLowerCase();
+    char[] text = inPlace ? source : scratch;
+    int textStart = inPlace ? start : 0;
     Token tok;
-    TokenType type = TokenType.find(s);
+    TokenType type = TokenType.find(text, textStart, length);
     if(type != null) {
       tok = new Token(type, l, c, o-1);
     } else {
       tok = new Token(TokenType.IDENT, l, c, o-1);
-      tok.setText(s);
-      tok.setCasedText(sb.toString());
+      if(inPlace) {
+        tok.setText(source, start, length);
+        inPlaceTokens.add(tok);
+      } else {
+        String s = new String(scratch, 0, length);
+        tok.setText(s.toLowerCase());
+        tok.setCasedText(s);
+      }
     }
     return tok;
   }
 
 
+  private void keep(int index, char c) {
+    if(scratch == null) {
+      scratch = new char[64];
+    } else if(index == scratch.length) {
+      scratch = Arrays.copyOf(scratch, index * 2);
+    }
+    scratch[index] = c;
+  }
+
   private Token stringLiteralIdentifier(char character) {
     StringBuilder sb = new StringBuilder();
     int l = line;
@@ -341,9 +426,13 @@ public class SQLTokenizer {
       c = 0;
     }
     ch = (char) c;
+    mark = EOF ? pos : pos - 1;
   }
 
   private int read() {
+    if(source != null) {
+      return pos < end ? source[pos++] : -1;
+    }
     int c;
     try {
       c = reader.read();
@@ -1,7 +1,10 @@
 package ragnardb.parser;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 
-public class Token
+public class Token implements Serializable
 {
 
   private TokenType _type;
@@ -13,6 +16,11 @@ public class Token
   private int _col;
   private int _offset;
   private String _casedText;
+  // identifier text still in the tokenizer's buffer; it becomes _text and _casedText on first use, or when the
+  // tokenizer reaches the end of its source
+  private transient volatile char[] _source;
+  private transient int _start;
+  private transient int _length;
 
   public Token(TokenType type, int line, int col, int offset) {
     _type = type;
@@ -23,13 +31,26 @@ public class Token
   }
 
   public String getText() {
+    if(_source != null) {
+      materialize();
+    }
     return _text;
   }
 
   public void setText(String text) {
+    materialize();
     _text = text;
   }
 
+  /**
+   * Sets the text of this token to the given range of the source, without copying it until it is asked for.
+   */
+  public void setText(char[] source, int start, int length) {
+    _start = start;
+    _length = length;
+    _source = source;
+  }
+
   public int getLine() {
     return _line;
   }
@@ -63,14 +84,31 @@ public class Token
   }
 
   public String getCasedText(){
+    if(_source != null) {
+      materialize();
+    }
     return _casedText;
   }
 
   public void setCasedText(String text){
+    materialize();
     _casedText = text;
   }
 
+  void materialize() {
+    char[] source = _source;
+    if(source != null) {
+      String cased = new String(source, _start, _length);
+      _casedText = cased;
+      _text = cased.toLowerCase();
+      _source = null;
+    }
+  }
 
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    materialize();
+    out.defaultWriteObject();
+  }
 
   @Override
   public String toString() {
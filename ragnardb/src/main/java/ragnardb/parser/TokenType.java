@@ -1,5 +1,6 @@
 package ragnardb.parser;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -32,7 +33,29 @@ public enum TokenType {
   EOF("End of file"), UNKNOWN;
 
   String _name;
-  private static Map<String, TokenType> keyword2TokType;
+  private static final Map<String, TokenType> keyword2TokType = new HashMap<String, TokenType>();
+  // keywords bucketed by length and then by first letter (a-z, then _), for matching against identifier text in place
+  private static final TokenType[][][] keywordsByShape;
+
+  static {
+    // built up front rather than on first use: files may be tokenized on several threads at once
+    int longest = 0;
+    for (TokenType t : values()) {
+      keyword2TokType.put(t._name, t);
+      if (t._name != null && shapeOf(t._name.charAt(0)) >= 0) {
+        longest = Math.max(longest, t._name.length());
+      }
+    }
+    keywordsByShape = new TokenType[longest + 1][27][0];
+    for (TokenType t : values()) {
+      if (t._name != null && shapeOf(t._name.charAt(0)) >= 0) {
+        TokenType[] bucket = keywordsByShape[t._name.length()][shapeOf(t._name.charAt(0))];
+        bucket = Arrays.copyOf(bucket, bucket.length + 1);
+        bucket[bucket.length - 1] = t;
+        keywordsByShape[t._name.length()][shapeOf(t._name.charAt(0))] = bucket;
+      }
+    }
+  }
 
   private TokenType(String str) {
     _name = str;
@@ -42,13 +65,50 @@ public enum TokenType {
   }
 
   public static TokenType find(String name) {
-    if (keyword2TokType == null) {
-      keyword2TokType = new HashMap<String, TokenType>();
-      for (TokenType t : values()) {
-        keyword2TokType.put(t._name, t);
+    return keyword2TokType.get(name);
+  }
+
+  /**
+   * Like {@link #find(String)} for the lower case form of the given characters, but matches them where they
+   * are instead of building a string first.
+   */
+  public static TokenType find(char[] text, int start, int length) {
+    if (length >= keywordsByShape.length) {
+      return null;
+    }
+    int shape = shapeOf(text[start]);
+    if (shape < 0) {
+      return null;
+    }
+    for (TokenType t : keywordsByShape[length][shape]) {
+      if (matches(t._name, text, start)) {
+        return t;
       }
     }
-    return keyword2TokType.get(name);
+    return null;
+  }
+
+  private static boolean matches(String name, char[] text, int start) {
+    for (int i = 1; i < name.length(); i++) {
+      char c = text[start + i];
+      if (c >= 'A' && c <= 'Z') {
+        c += 'a' - 'A';
+      }
+      if (c != name.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int shapeOf(char c) {
+    if (c >= 'a' && c <= 'z') {
+      return c - 'a';
+    }
+    if (c >= 'A' && c <= 'Z') {
+      return c - 'A';
+    }
+    return c == '_' ? 26 : -1;
   }
 
   public String getName() {
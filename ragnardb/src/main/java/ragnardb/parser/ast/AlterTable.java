@@ -1,7 +1,9 @@
 package ragnardb.parser.ast;
 
+import java.io.Serializable;
+
 /**
  * Created by klu on 7/7/2015.
  */
-public class AlterTable {
+public class AlterTable implements Serializable {
 }
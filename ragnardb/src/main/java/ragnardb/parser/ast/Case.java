@@ -2,12 +2,13 @@ package ragnardb.parser.ast;
 
 import ragnardb.parser.Token;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Created by klu on 6/22/2015.
  */
-public class Case {
+public class Case implements Serializable {
   private Expression _initial;
   private ArrayList<WhenThen> _whenThens;
   private Expression _else;
@@ -97,7 +98,7 @@ public class Case {
     return sb.toString();
   }
 
-  private class WhenThen {
+  private class WhenThen implements Serializable {
     private Expression _when;
     private Expression _then;
 
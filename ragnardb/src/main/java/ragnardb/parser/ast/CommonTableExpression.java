@@ -2,12 +2,13 @@ package ragnardb.parser.ast;
 
 import ragnardb.parser.Token;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Created by klu on 6/25/2015.
  */
-public class CommonTableExpression {
+public class CommonTableExpression implements Serializable {
   private String name;
   private ArrayList<String> columns;
   private SelectStatement select;
@@ -2,12 +2,13 @@ package ragnardb.parser.ast;
 
 import ragnardb.parser.Token;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Created by klu on 6/22/2015.
  */
-public class Condition {
+public class Condition implements Serializable {
   /*We express condition as a relationship between two operands, regardless of what the relationship is*/
   private Operand first, second;
   /*This is to keep track of which tokens we have to swallow/pass through*/
@@ -1,12 +1,13 @@
 package ragnardb.parser.ast;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Created by klu on 6/23/2015.
  */
-public class Constraint {
+public class Constraint implements Serializable {
   public enum constraintType{CHECK,UNIQUE,FOREIGN,PRIMARY,PRIMARYHASH};
   public enum referentialAction{CASCADE,RESTRICT,NO_ACTION,SET_DEFAULT,SET_NULL};
   private Expression expr;
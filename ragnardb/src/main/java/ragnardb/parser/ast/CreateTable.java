@@ -3,13 +3,14 @@ package ragnardb.parser.ast;
 import ragnardb.plugin.ColumnDefinition;
 import ragnardb.utils.NounHandler;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Created by pjennings on 6/23/2015.
  */
-public class CreateTable {
+public class CreateTable implements Serializable {
   private List<ColumnDefinition> columns;
   private List<Constraint> constraints;
   private String _typeName;
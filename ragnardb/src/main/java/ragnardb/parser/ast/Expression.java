@@ -2,12 +2,13 @@ package ragnardb.parser.ast;
 
 import ragnardb.parser.Token;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Created by klu on 6/22/2015.
  */
-public class Expression {
+public class Expression implements Serializable {
   private ArrayList<AndCondition> _conditions;
   /*This is to keep track of which tokens we have to swallow/pass through*/
   private ArrayList<Token> swallowedTokens = new ArrayList<>();
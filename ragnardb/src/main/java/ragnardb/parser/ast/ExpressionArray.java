@@ -1,11 +1,12 @@
 package ragnardb.parser.ast;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Created by klu on 8/5/2015.
  */
-public class ExpressionArray {
+public class ExpressionArray implements Serializable {
   private ArrayList<Expression> _expressions;
 
   public ExpressionArray(Expression e){
@@ -2,12 +2,13 @@ package ragnardb.parser.ast;
 
 import ragnardb.parser.Token;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Created by klu on 6/22/2015.
  */
-public class Factor {
+public class Factor implements Serializable {
   private ArrayList<Term> _terms;
   /*This is to keep track of which tokens we have to swallow/pass through*/
   private ArrayList<Token> swallowedTokens = new ArrayList<>();
@@ -1,9 +1,11 @@
 package ragnardb.parser.ast;
 
+import java.io.Serializable;
+
 /**
  * Created by klu on 6/25/2015.
  */
-public class JavaVar {
+public class JavaVar implements Serializable {
   private String _varName;
   private String _varType;
   private int line, col, skiplen;
@@ -3,12 +3,13 @@ package ragnardb.parser.ast;
 
 import ragnardb.parser.Token;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Created by klu on 8/5/2015.
  */
-public class OrderingTerm {
+public class OrderingTerm implements Serializable {
   private Expression _internalexpr;
   private ArrayList<Token> _tokens;
 
@@ -1,9 +1,11 @@
 package ragnardb.parser.ast;
 
+import java.io.Serializable;
+
 /**
  * Created by klu on 6/25/2015.
  */
-public abstract class SQL {
+public abstract class SQL implements Serializable {
   private int errCount;
 
   public void setErrCount(int e){
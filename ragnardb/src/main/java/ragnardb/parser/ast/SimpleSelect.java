@@ -1,11 +1,12 @@
 package ragnardb.parser.ast;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Created by klu on 8/5/2015.
  */
-public class SimpleSelect {
+public class SimpleSelect implements Serializable {
   private Term _limitingterm;
   private ArrayList<ResultColumn> _resultcolumns;
   private String _alias;
@@ -2,12 +2,13 @@ package ragnardb.parser.ast;
 
 import ragnardb.parser.Token;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Created by klu on 6/22/2015.
  */
-public class Summand {
+public class Summand implements Serializable {
   private ArrayList<Factor> _factors;
   /*Contains data about the operators: FALSE - -; TRUE - +*/
   private ArrayList<Boolean> _operators;
@@ -1,11 +1,12 @@
 package ragnardb.parser.ast;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Created by klu on 7/6/2015.
  */
-public class TableOrSubquery {
+public class TableOrSubquery implements Serializable {
   private String _name;
   private Object _containedObject;
   private Expression _joinexpression;
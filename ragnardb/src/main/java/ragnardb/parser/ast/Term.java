@@ -2,12 +2,13 @@ package ragnardb.parser.ast;
 
 import ragnardb.parser.Token;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Created by klu on 6/22/2015.
  */
-public abstract class Term {
+public abstract class Term implements Serializable {
   private int line, col;
   private ArrayList<Token> swallowedTokens = new ArrayList<>();
 
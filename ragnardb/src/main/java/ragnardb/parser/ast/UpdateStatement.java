@@ -2,6 +2,7 @@ package ragnardb.parser.ast;
 
 import ragnardb.parser.Token;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
@@ -21,7 +22,7 @@ public class UpdateStatement extends Statement{
     _limit = null;
   }
 
-  private abstract class UpdateType{
+  private abstract class UpdateType implements Serializable {
     protected abstract void addColumn(String colName);
     protected abstract void setStatement(SelectStatement statement);
     protected abstract void addExpression(Expression e);
@@ -1,11 +1,12 @@
 package ragnardb.parser.ast;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Created by klu on 8/5/2015.
  */
-public class ValuesClause {
+public class ValuesClause implements Serializable {
   private ArrayList<ArrayList<Expression>> _expressions;
   private int size;
 
@@ -1,11 +1,12 @@
 package ragnardb.plugin;
 
+import java.io.Serializable;
 import java.sql.Types;
 import java.util.HashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class ColumnDefinition {
+public class ColumnDefinition implements Serializable {
   private String _columnName;
   private String _propertyName;
   private int _sqlType; // see java.sql.Types: http://docs.oracle.com/javase/8/docs/api/index.html?java/sql/Types.html
@@ -7,6 +7,7 @@ import gw.lang.reflect.IPropertyInfo;
 import gw.lang.reflect.IType;
 import gw.lang.reflect.LocationInfo;
 import gw.lang.reflect.PropertyInfoBase;
+import ragnardb.runtime.ColumnLayout;
 import ragnardb.runtime.IHasListenableProperties;
 import ragnardb.runtime.IListenerAction;
 import ragnardb.runtime.IPropertyIntermediateAccessor;
@@ -24,22 +25,34 @@ public class SQLColumnPropertyInfo extends PropertyInfoBase implements IProperty
   private String _columnName;
   private String _propName;
   private IType _propType;
+  private final ColumnLayout _layout;
+  private final int _slot;
   private IPropertyAccessor _accessor;
   private final ILocationInfo _location;
 
   protected SQLColumnPropertyInfo(String columnName, String propName, IType propertyType, SQLBaseTypeInfo container, int offset, int length)
+  {
+    this( columnName, propName, propertyType, container, null, offset, length );
+  }
+
+  /**
+   * @param layout the slot layout of the table's records, letting the accessor skip the by-name lookup
+   */
+  protected SQLColumnPropertyInfo(String columnName, String propName, IType propertyType, SQLBaseTypeInfo container, ColumnLayout layout, int offset, int length)
   {
     super( container );
     _columnName = columnName;
     _propName = propName;
     _propType = propertyType;
+    _slot = layout == null ? -1 : layout.slotOf( columnName );
+    _layout = _slot < 0 ? null : layout;
     _accessor = new IPropertyIntermediateAccessor() {
 
       private Object _intermediateValue = null;
 
       @Override
       public Object getValue( Object obj ) {
-        return _intermediateValue != null ? _intermediateValue : ((SQLRecord) obj).getRawValue(_columnName);
+        return _intermediateValue != null ? _intermediateValue : ((SQLRecord) obj).getRawValue(_layout, _slot, _columnName);
       }
 
       /**
@@ -55,7 +68,7 @@ public class SQLColumnPropertyInfo extends PropertyInfoBase implements IProperty
       public void setValue( Object obj, Object val ) {
         _intermediateValue = val;
         fireListeners(obj);
-        ((SQLRecord) obj).setRawValue(_columnName, _intermediateValue);
+        ((SQLRecord) obj).setRawValue(_layout, _slot, _columnName, _intermediateValue);
         _intermediateValue = null;
       }
     };
@@ -26,6 +26,13 @@ public class SQLDdlType extends SQLTypeBase implements ISQLDdlType {
     }
   };
 
+  private final LockingLazyVar<SQLForeignKeyGraph> _foreignKeys = new LockingLazyVar<SQLForeignKeyGraph>() {
+    @Override
+    protected SQLForeignKeyGraph init() {
+      return new SQLForeignKeyGraph(getTables());
+    }
+  };
+
   public SQLDdlType( IFile file, SQLPlugin plugin ) {
     super(file, plugin);
   }
@@ -72,4 +79,9 @@ public class SQLDdlType extends SQLTypeBase implements ISQLDdlType {
   public List<CreateTable> getTables() {
     return ((DDL) getParseTree()).getList().stream().collect(Collectors.toList());
   }
+
+  @Override
+  public SQLForeignKeyGraph getForeignKeys() {
+    return _foreignKeys.get();
+  }
 }
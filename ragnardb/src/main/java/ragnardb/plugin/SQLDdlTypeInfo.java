@@ -96,7 +96,12 @@ public class SQLDdlTypeInfo extends SQLBaseTypeInfo {
       .withCallHandler((ctx, args) -> {
         Connection con = null;
         Savepoint save1 = null;
+        // bind one connection to this thread so every statement run by the block joins the transaction
+        boolean ownsConnection = !RagnarDB.hasThreadConnection();
         try {
+          if (ownsConnection) {
+            RagnarDB.establishConnection();
+          }
           con = RagnarDB.getConnection();
           con.setAutoCommit(false);
 
@@ -121,6 +126,14 @@ public class SQLDdlTypeInfo extends SQLBaseTypeInfo {
           } catch (Exception e) {
             System.err.println("Error in SQLAutoCommit change");
             throw GosuExceptionUtil.forceThrow(e);
+          } finally {
+            if (ownsConnection) {
+              try {
+                RagnarDB.releaseConnection();
+              } catch (SQLException e) {
+                throw GosuExceptionUtil.forceThrow(e);
+              }
+            }
           }
         }
 
@@ -0,0 +1,92 @@
+package ragnardb.plugin;
+
+import ragnardb.parser.ast.Constraint;
+import ragnardb.parser.ast.CreateTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The foreign keys declared in one ddl file, indexed by both the referencing and the referenced table.
+ * It is built in a single pass over the tables so that a table type can find the keys pointing at it
+ * without scanning the constraints of every other table.
+ */
+public class SQLForeignKeyGraph {
+  private final Map<String, List<Reference>> _referencesFrom = new HashMap<>();
+  private final Map<String, List<Reference>> _referencesTo = new HashMap<>();
+
+  public SQLForeignKeyGraph(List<CreateTable> tables) {
+    Map<String, CreateTable> tablesByName = new HashMap<>();
+    for(CreateTable table : tables) {
+      tablesByName.put(table.getTableName(), table);
+    }
+
+    for(CreateTable table : tables) {
+      for(Constraint c : table.getConstraints()) {
+        if(c.getType() != Constraint.constraintType.FOREIGN || c.getColumnNames().isEmpty() || c.getReferentialColumnNames().isEmpty()) {
+          continue;
+        }
+        CreateTable foreignTable = tablesByName.get(c.getReferentialName());
+        if(foreignTable == null) {
+          continue;
+        }
+        ColumnDefinition column = table.getColumnDefinitionByName(c.getColumnNames().get(0));
+        ColumnDefinition foreignColumn = foreignTable.getColumnDefinitionByName(c.getReferentialColumnNames().get(0));
+        if(column == null || foreignColumn == null) {
+          System.err.println("Error: Foreign Key Declaration does not match with table columns");
+          continue;
+        }
+        Reference ref = new Reference(table, column, foreignTable, foreignColumn);
+        _referencesFrom.computeIfAbsent(table.getTableName(), k -> new ArrayList<>()).add(ref);
+        _referencesTo.computeIfAbsent(foreignTable.getTableName(), k -> new ArrayList<>()).add(ref);
+      }
+    }
+  }
+
+  /**
+   * @return the foreign keys declared by the given table, in declaration order
+   */
+  public List<Reference> getReferencesFrom(String tableName) {
+    return _referencesFrom.getOrDefault(tableName, Collections.emptyList());
+  }
+
+  /**
+   * @return the foreign keys of other tables (or of the table itself) that point at the given table
+   */
+  public List<Reference> getReferencesTo(String tableName) {
+    return _referencesTo.getOrDefault(tableName, Collections.emptyList());
+  }
+
+  public static final class Reference {
+    private final CreateTable _table;
+    private final ColumnDefinition _column;
+    private final CreateTable _foreignTable;
+    private final ColumnDefinition _foreignColumn;
+
+    Reference(CreateTable table, ColumnDefinition column, CreateTable foreignTable, ColumnDefinition foreignColumn) {
+      _table = table;
+      _column = column;
+      _foreignTable = foreignTable;
+      _foreignColumn = foreignColumn;
+    }
+
+    public CreateTable getTable() {
+      return _table;
+    }
+
+    public ColumnDefinition getColumn() {
+      return _column;
+    }
+
+    public CreateTable getForeignTable() {
+      return _foreignTable;
+    }
+
+    public ColumnDefinition getForeignColumn() {
+      return _foreignColumn;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package ragnardb.plugin;
+
+import gw.fs.IFile;
+import gw.util.StreamUtil;
+import ragnardb.parser.SQLParser;
+import ragnardb.parser.SQLTokenizer;
+import ragnardb.parser.ast.SQL;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * The parse trees of the plugin's .ddl and .sql files. At startup the plugin parses all of its files up
+ * front, in parallel when it has the cores for it, and the types built afterwards take their parse tree
+ * from here instead of parsing their file one at a time. With a store directory configured, trees are
+ * also read from and saved to disk, see {@link SQLParseStore}.
+ */
+class SQLParseCache {
+  private final Map<IFile, SQL> _trees = new ConcurrentHashMap<>();
+  private final Supplier<File> _storeDir;
+
+  SQLParseCache() {
+    this(() -> null);
+  }
+
+  /**
+   * @param storeDir the directory parse trees are also saved to between runs, or null for none
+   */
+  SQLParseCache(Supplier<File> storeDir) {
+    _storeDir = storeDir;
+  }
+
+  /**
+   * @return the parse tree of the given file, parsing it if it hasn't been
+   */
+  SQL get(IFile file) throws IOException {
+    SQL tree = _trees.get(file);
+    if(tree == null) {
+      tree = parse(file);
+      _trees.put(file, tree);
+    }
+    return tree;
+  }
+
+  /**
+   * Parses the given files on up to the given number of threads, or on this one if parallelism is 1.
+   * Files that fail to parse are left for their type to report when it parses them itself.
+   */
+  void preparse(Collection<IFile> files, int parallelism) {
+    if(parallelism <= 1 || files.size() < 2) {
+      files.forEach(this::tryParse);
+      return;
+    }
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      pool.submit(() -> files.parallelStream().forEach(this::tryParse)).get();
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch(ExecutionException e) {
+      // tryParse doesn't throw, whatever wasn't parsed is parsed on demand
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  void remove(IFile file) {
+    _trees.remove(file);
+  }
+
+  void clear() {
+    _trees.clear();
+  }
+
+  private void tryParse(IFile file) {
+    if(_trees.containsKey(file)) {
+      return;
+    }
+    try {
+      _trees.put(file, parse(file));
+    } catch(Exception e) {
+      // reported when the file's type parses it
+    }
+  }
+
+  private SQL parse(IFile file) throws IOException {
+    byte[] content;
+    try(InputStream in = file.openInputStream()) {
+      content = StreamUtil.getContent(in);
+    }
+    File dir = _storeDir.get();
+    SQLParseStore store = dir == null ? null : new SQLParseStore(dir);
+    String path = file.getPath().getFileSystemPathString();
+    SQL tree = store == null ? null : store.load(path, content);
+    if(tree == null) {
+      tree = new SQLParser(new SQLTokenizer(Charset.defaultCharset().decode(ByteBuffer.wrap(content)), file.getName())).parse();
+      if(store != null) {
+        store.store(path, content, tree);
+      }
+    }
+    return tree;
+  }
+}
@@ -0,0 +1,203 @@
+package ragnardb.plugin;
+
+import gw.util.StreamUtil;
+import ragnardb.parser.SQLParser;
+import ragnardb.parser.ast.SQL;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Parse trees saved to disk between runs, so that a restarted process doesn't parse sources that haven't
+ * changed. An entry is found by the path of its source and is only used if it was written from the same
+ * content by the same parser; anything else, including an entry that can't be read, is a miss.
+ *
+ * The parser is identified by a hash of the compiled parser, ast and column definition classes, so any change
+ * to them invalidates every stored tree. Entries are read back with only those classes (and the JDK types they
+ * hold) allowed, so a tampered entry can't instantiate anything else.
+ */
+class SQLParseStore {
+  /**
+   * A hash of the classes a parse tree is made of, or null if they can't be read, in which case nothing is stored.
+   */
+  static final byte[] PARSER_VERSION = parserVersion();
+
+  private static final Set<String> JDK_CLASSES = new HashSet<>(Arrays.asList(
+    "java.lang.String", "java.lang.Enum", "java.lang.Number", "java.lang.Boolean", "java.lang.Integer",
+    "java.lang.Long", "java.lang.Double", "java.util.ArrayList", "java.util.LinkedList", "java.util.HashMap",
+    "java.util.LinkedHashMap", "java.util.HashSet", "java.util.LinkedHashSet", "java.util.Collections$EmptyList",
+    "java.util.Collections$EmptyMap", "java.util.Collections$EmptySet", "java.util.Collections$UnmodifiableList",
+    "java.util.Collections$UnmodifiableRandomAccessList", "java.util.Collections$UnmodifiableCollection",
+    "java.util.Arrays$ArrayList"));
+
+  private final File _dir;
+
+  SQLParseStore(File dir) {
+    _dir = dir;
+  }
+
+  /**
+   * @return the stored parse tree of the given content at the given path, or null if there is none
+   */
+  SQL load(String path, byte[] content) {
+    File entry = entryFor(path);
+    if(PARSER_VERSION == null || !entry.isFile()) {
+      return null;
+    }
+    // InvalidClassException, from a filtered or changed class, is an IOException and so a miss too
+    try(ObjectInputStream in = new FilteringInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(entry))))) {
+      if(!Arrays.equals((byte[]) in.readObject(), PARSER_VERSION) || !Arrays.equals((byte[]) in.readObject(), hash(content))) {
+        return null;
+      }
+      return (SQL) in.readObject();
+    } catch(IOException | ClassNotFoundException | ClassCastException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Saves the parse tree of the given content at the given path. A failure to save only costs a parse later.
+   */
+  void store(String path, byte[] content, SQL tree) {
+    if(PARSER_VERSION == null) {
+      return;
+    }
+    File entry = entryFor(path);
+    File temp = null;
+    try {
+      Files.createDirectories(_dir.toPath());
+      temp = File.createTempFile(entry.getName(), ".tmp", _dir);
+      try(ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))) {
+        out.writeObject(PARSER_VERSION);
+        out.writeObject(hash(content));
+        out.writeObject(tree);
+      }
+      // readers on other processes see the old entry or the new one, never half of one
+      Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch(IOException e) {
+      if(temp != null) {
+        temp.delete();
+      }
+    }
+  }
+
+  File entryFor(String path) {
+    StringBuilder name = new StringBuilder();
+    for(byte b : hash(path.getBytes(StandardCharsets.UTF_8))) {
+      name.append(String.format("%02x", b));
+    }
+    return new File(_dir, name.append(".ast").toString());
+  }
+
+  /**
+   * @return true for the classes a stored parse tree may be made of
+   */
+  static boolean isAllowed(String className) {
+    String name = className;
+    while(name.startsWith("[")) {
+      name = name.substring(1);
+    }
+    if(name.length() == 1) {
+      return true; // an array of primitives
+    }
+    if(name.startsWith("L") && name.endsWith(";")) {
+      name = name.substring(1, name.length() - 1);
+    }
+    return name.startsWith("ragnardb.parser.ast.") ||
+           name.equals("ragnardb.parser.Token") ||
+           name.startsWith("ragnardb.parser.TokenType") ||
+           name.equals("ragnardb.plugin.ColumnDefinition") ||
+           JDK_CLASSES.contains(name);
+  }
+
+  /**
+   * Hashes the compiled parser package and column definitions, from the jar or directory ragnardb was loaded from.
+   */
+  private static byte[] parserVersion() {
+    try {
+      File location = new File(SQLParser.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+      SortedMap<String, byte[]> classes = new TreeMap<>();
+      if(location.isDirectory()) {
+        for(String name : new String[]{"ragnardb/parser", "ragnardb/plugin/ColumnDefinition.class"}) {
+          File file = new File(location, name);
+          if(file.isDirectory()) {
+            try(Stream<java.nio.file.Path> paths = Files.walk(file.toPath())) {
+              for(java.nio.file.Path classFile : (Iterable<java.nio.file.Path>) paths.filter(Files::isRegularFile)::iterator) {
+                classes.put(location.toPath().relativize(classFile).toString().replace(File.separatorChar, '/'), Files.readAllBytes(classFile));
+              }
+            }
+          } else {
+            classes.put(name, Files.readAllBytes(file.toPath()));
+          }
+        }
+      } else {
+        try(JarFile jar = new JarFile(location)) {
+          for(JarEntry jarEntry : Collections.list(jar.entries())) {
+            String name = jarEntry.getName();
+            if(name.startsWith("ragnardb/parser/") && !jarEntry.isDirectory() || name.equals("ragnardb/plugin/ColumnDefinition.class")) {
+              classes.put(name, StreamUtil.getContent(jar.getInputStream(jarEntry)));
+            }
+          }
+        }
+      }
+      if(classes.isEmpty()) {
+        return null;
+      }
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for(Map.Entry<String, byte[]> entry : classes.entrySet()) {
+        digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+        digest.update(entry.getValue());
+      }
+      return digest.digest();
+    } catch(IOException | URISyntaxException | NoSuchAlgorithmException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static byte[] hash(byte[] bytes) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(bytes);
+    } catch(NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Refuses to resolve anything a parse tree isn't made of.
+   */
+  private static class FilteringInputStream extends ObjectInputStream {
+    FilteringInputStream(InputStream in) throws IOException {
+      super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      if(!isAllowed(desc.getName())) {
+        throw new InvalidClassException(desc.getName(), "not part of a parse tree");
+      }
+      return super.resolveClass(desc);
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+      throw new InvalidClassException("proxy", "not part of a parse tree");
+    }
+  }
+}
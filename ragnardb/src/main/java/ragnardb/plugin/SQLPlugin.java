@@ -11,6 +11,8 @@ import gw.util.GosuStringUtil;
 import gw.util.Pair;
 import gw.util.concurrent.LockingLazyVar;
 import ragnardb.parser.ast.CreateTable;
+import ragnardb.parser.ast.DDL;
+import ragnardb.parser.ast.SQL;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -21,6 +23,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class SQLPlugin extends TypeLoaderBase {
@@ -84,9 +87,39 @@ public class SQLPlugin extends TypeLoaderBase {
     }
   };
 
+  /**
+   * Every table declared in a ddl file, by lower case table name, so that .sql types resolve their tables
+   * and columns with a lookup rather than a walk of the source path.
+   */
+  private final LockingLazyVar<Map<String, List<TableSymbol>>> _tablesByName = new LockingLazyVar<Map<String, List<TableSymbol>>>() {
+    @Override
+    protected Map<String, List<TableSymbol>> init() {
+      Map<String, List<TableSymbol>> result = new HashMap<>();
+      // ddl files are visited in the order the lookups used to scan them, so duplicate table names resolve as before
+      for(String ddlName : new HashSet<>(_ddlSourcesByPackage.get().keySet())) {
+        for(CreateTable table : getOrCreateDdlType(ddlName).getTables()) {
+          result.computeIfAbsent(table.getTableName().toLowerCase(), k -> new ArrayList<>()).add(new TableSymbol(ddlName, table));
+        }
+      }
+      return result;
+    }
+  };
+
+  private static volatile int _parseParallelism =
+    Integer.getInteger("ragnardb.parseParallelism", Runtime.getRuntime().availableProcessors());
+
+  private static volatile File _parseCacheDirectory =
+    System.getProperty("ragnardb.parseCacheDir") == null ? null : new File(System.getProperty("ragnardb.parseCacheDir"));
+
+  private final SQLParseCache _parseTrees = new SQLParseCache(() -> _parseCacheDirectory);
   private Map<String, ISQLDdlType> _fqnToDdlType = new HashMap<>();
   private Map<String, ISQLQueryType> _fqnToSqlType = new HashMap<>();
   private Map<String, ISQLQueryResultType> _fqnToResultType = new HashMap<>();
+  /**
+   * The .sql types that looked up each (lower case) table name, found or not, so that a change to a ddl file
+   * only rebuilds the queries that resolved against the tables it declares.
+   */
+  private final Map<String, Set<String>> _queriesByTable = new ConcurrentHashMap<>();
   private Set<String> _namespaces;
 
   public SQLPlugin(IModule module) {
@@ -180,7 +213,17 @@ public class SQLPlugin extends TypeLoaderBase {
 
   @Override
   public void refreshedNamespace( String namespace, IDirectory dir, RefreshKind kind ) {
-    clear();
+    clearSources();
+    for( String ddl : new ArrayList<>( _fqnToDdlType.keySet() ) ) {
+      if( ddl.startsWith( namespace + '.' ) ) {
+        invalidateDdl( ddl, null );
+      }
+    }
+    for( String query : new ArrayList<>( _fqnToSqlType.keySet() ) ) {
+      if( query.startsWith( namespace + '.' ) ) {
+        invalidateQuery( query );
+      }
+    }
     if( _namespaces != null ) {
       if( kind == RefreshKind.CREATION )  {
         _namespaces.add( namespace );
@@ -206,9 +249,45 @@ public class SQLPlugin extends TypeLoaderBase {
     return true;
   }
 
+  public static int getParseParallelism() {
+    return _parseParallelism;
+  }
+
+  /**
+   * @param parallelism the number of threads the plugin parses its .ddl and .sql files on when computing its
+   *                    type names; 1 parses them one at a time. Defaults to the number of processors, or the
+   *                    ragnardb.parseParallelism system property
+   */
+  public static void setParseParallelism(int parallelism) {
+    if(parallelism < 1) {
+      throw new IllegalArgumentException("Parse parallelism must be at least 1");
+    }
+    _parseParallelism = parallelism;
+  }
+
+  public static File getParseCacheDirectory() {
+    return _parseCacheDirectory;
+  }
+
+  /**
+   * @param dir a directory to save parse trees to, so that later runs skip parsing sources that haven't
+   *            changed, or null (the default, unless the ragnardb.parseCacheDir system property is set) to
+   *            parse every source on every run
+   */
+  public static void setParseCacheDirectory(File dir) {
+    _parseCacheDirectory = dir;
+  }
+
+  SQLParseCache getParseTrees() {
+    return _parseTrees;
+  }
+
   @Override
   public Set<String> computeTypeNames() {
     Set<String> result = new HashSet<>();
+    List<IFile> sources = new ArrayList<>(_ddlSourcesByPackage.get().values());
+    sources.addAll(_sqlSourcesByPackage.get().values());
+    _parseTrees.preparse(sources, _parseParallelism);
     for(String pkg : _ddlSourcesByPackage.get().keySet()) {
       for(CreateTable table : getOrCreateDdlType(pkg).getTables()) {
         result.add(pkg + '.' + table.getTypeName());
@@ -299,124 +378,194 @@ public class SQLPlugin extends TypeLoaderBase {
 
   @Override
   public RefreshKind refreshedFile(IFile file, String[] types, RefreshKind kind) {
-    clear();
+    invalidate(file, kind);
     return kind;
   }
+
   @Override
   protected void refreshedTypesImpl(RefreshRequest request) {
-    clear();
+    if(request.file != null && handlesFile(request.file)) {
+      invalidate(request.file, request.kind);
+    } else {
+      clear();
+    }
   }
 
-  private void clear() {
+  /**
+   * Drops what was built from the given file: its type, its parse tree and, for a ddl file, the .sql types
+   * that resolved against the tables it declared before or declares now. Everything else is kept.
+   */
+  private void invalidate(IFile file, RefreshKind kind) {
+    String fqn = getTypeNameForFile(file);
+    if(kind != RefreshKind.MODIFICATION) {
+      clearSources();
+    }
+    _parseTrees.remove(file);
+    if(fqn == null) {
+      clear();
+    } else if(DDL_EXTENSION.substring(1).equals(file.getExtension())) {
+      invalidateDdl(fqn, kind == RefreshKind.DELETION ? null : file);
+    } else {
+      invalidateQuery(fqn);
+    }
+  }
+
+  private void invalidateDdl(String fqn, IFile newSource) {
+    Set<String> tables = new HashSet<>();
+    ISQLDdlType old = _fqnToDdlType.remove(fqn);
+    if(old != null) {
+      for(CreateTable table : old.getTables()) {
+        tables.add(table.getTableName().toLowerCase());
+      }
+    }
+    if(newSource != null) {
+      try {
+        SQL tree = _parseTrees.get(newSource);
+        if(tree instanceof DDL) {
+          for(CreateTable table : ((DDL) tree).getList()) {
+            tables.add(table.getTableName().toLowerCase());
+          }
+        }
+      } catch(Exception e) {
+        // reported when the type is rebuilt
+      }
+    }
+    _tablesByName.clear();
+    for(String table : tables) {
+      Set<String> queries = _queriesByTable.remove(table);
+      if(queries != null) {
+        queries.forEach(this::invalidateQuery);
+      }
+    }
+  }
+
+  private void invalidateQuery(String fqn) {
+    _fqnToSqlType.remove(fqn);
+  }
+
+  /**
+   * Records that the given .sql type looked up the given table, see {@link #_queriesByTable}.
+   */
+  void addTableDependency(String queryName, String tableName) {
+    _queriesByTable.computeIfAbsent(tableName.toLowerCase(), k -> ConcurrentHashMap.newKeySet()).add(queryName);
+  }
+
+  /**
+   * @return the type built from the given ddl or .sql type name, or null if it hasn't been built
+   */
+  ISQLTypeBase getLoadedType(String fullyQualifiedName) {
+    ISQLTypeBase type = _fqnToDdlType.get(fullyQualifiedName);
+    return type != null ? type : _fqnToSqlType.get(fullyQualifiedName);
+  }
+
+  private String getTypeNameForFile(IFile file) {
+    for(IDirectory dir : _module.getSourcePath()) {
+      if(dir.getPath().isDescendant(file.getPath())) {
+        String name = dir.getPath().relativePath(file.getPath(), "/");
+        return name.substring(0, name.lastIndexOf('.')).replace('/', '.');
+      }
+    }
+    return null;
+  }
+
+  private void clearSources() {
     _fileToDdlTypeName.clear();
     _sqlSourcesByPackage.clear();
     _fileToSqlTypeName.clear();
     _ddlSourcesByPackage.clear();
+    _tablesByName.clear();
+  }
+
+  private void clear() {
+    clearSources();
     _fqnToDdlType.clear();
     _fqnToSqlType.clear();
+    _queriesByTable.clear();
+    _parseTrees.clear();
     //_namespaces.deleteAll();
   }
 
   protected ISQLTableType getTypeFromRelativeName(String relativeName, String namespace){
-    String currentName;
-    if(relativeName.contains("\\.")){
-       currentName = relativeName.split("\\.")[1];
-    } else {currentName = relativeName;}
-
-    List<Pair<String, IFile>> allFilesByExtension = findAllFilesByExtension(DDL_EXTENSION);
+    TableSymbol symbol = findTable(relativeName, namespace);
+    if(symbol == null) {
+      return null;
+    }
+    return (ISQLTableType) TypeSystem.getByFullNameIfValid(symbol.getTypeName());
+  }
 
-    while(!namespace.equals("")) {
-      Set<String> filesInCurrentDirectory = new HashSet<>();
-      for (Pair<String, IFile> pair : allFilesByExtension) {
-        String fileName = pair.getFirst();
-        String fqn = fileName.substring(0, fileName.length() - SQL_EXTENSION.length()).replace('/', '.');
-        if (fqn.contains(namespace)) {
-          filesInCurrentDirectory.add(fqn);
-        }
+  protected IType getColumnFromRelativeName(String relativeName, String namespace, String tableName){
+    for(TableSymbol symbol : findTables(tableName, namespace)) {
+      ColumnDefinition col = symbol._columns.get(relativeName);
+      if(col != null) {
+        return getColumnProperty(symbol, col).getFeatureType();
       }
+    }
+    return JavaTypes.OBJECT();
+  }
 
-      for (String fileinCD : filesInCurrentDirectory) {
-        ISQLDdlType currentType = getOrCreateDdlType(fileinCD);
-        List<CreateTable> tables = currentType.getTables();
-        for (CreateTable table : tables) {
-          if (currentName.equals(table.getTableName())) {
-            ISQLTableType returnType = (ISQLTableType) TypeSystem.getByFullNameIfValid(currentType.getName() + "." + table.getTypeName());
-            return returnType;
-          }
-        }
+  protected SQLColumnPropertyInfo getColumnProperty(String columnName, String namespace, String tableName){
+    for(TableSymbol symbol : findTables(tableName, namespace)) {
+      ColumnDefinition col = symbol._columnsIgnoringCase.get(columnName.toLowerCase());
+      if(col != null) {
+        return getColumnProperty(symbol, col);
       }
-      namespace = namespace.contains("\\.")?namespace.substring(0, namespace.lastIndexOf('.')):"";
     }
     return null;
   }
 
-  protected IType getColumnFromRelativeName(String relativeName, String namespace, String tableName){
-    String currentName;
-    if(relativeName.contains("\\.")){
-      currentName = relativeName.split("\\.")[1];
-    } else {currentName = relativeName;}
-
-    List<Pair<String, IFile>> allFilesByExtension = findAllFilesByExtension(DDL_EXTENSION);
+  private SQLColumnPropertyInfo getColumnProperty(TableSymbol symbol, ColumnDefinition col) {
+    ISQLTableType cTable = (ISQLTableType) getType(symbol.getTypeName());
+    SQLTableTypeInfo cInfo = (SQLTableTypeInfo)cTable.getTypeInfo();
+    return (SQLColumnPropertyInfo)cInfo.getProperty(col.getPropertyName());
+  }
 
-    while(!namespace.equals("")) {
-      Set<String> filesInCurrentDirectory = new HashSet<>();
-      for (Pair<String, IFile> pair : allFilesByExtension) {
-        String fileName = pair.getFirst();
-        String fqn = fileName.substring(0, fileName.length() - SQL_EXTENSION.length()).replace('/', '.');
-        if (fqn.contains(namespace)) {
-          filesInCurrentDirectory.add(fqn);
-        }
-      }
+  private TableSymbol findTable(String tableName, String namespace) {
+    List<TableSymbol> tables = findTables(tableName, namespace);
+    return tables.isEmpty() ? null : tables.get(0);
+  }
 
-      for (String fileinCD : filesInCurrentDirectory) {
-        ISQLDdlType currentType = getOrCreateDdlType(fileinCD);
-        List<CreateTable> tables = currentType.getTables();
-        for (CreateTable table : tables) {
-          for(ColumnDefinition col: table.getColumnDefinitions()){
-            if(col.getColumnName().equals(currentName) && table.getTableName().toLowerCase().equals(tableName)){
-              ISQLTableType cTable = (ISQLTableType) getType(fileinCD+"."+table.getTypeName());
-              SQLTableTypeInfo cInfo = (SQLTableTypeInfo)cTable.getTypeInfo();
-              SQLColumnPropertyInfo pInfo = (SQLColumnPropertyInfo)cInfo._propertiesMap.get(col.getPropertyName());
-              return pInfo.getFeatureType();
-            }
-          }
-        }
+  /**
+   * @return the tables of the given (lower case) name declared in ddl files directly in the given namespace
+   */
+  private List<TableSymbol> findTables(String tableName, String namespace) {
+    List<TableSymbol> candidates = _tablesByName.get().get(tableName);
+    if(candidates == null || namespace.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<TableSymbol> result = new ArrayList<>(1);
+    for(TableSymbol candidate : candidates) {
+      if(candidate.getNamespace().equals(namespace)) {
+        result.add(candidate);
       }
-      namespace = namespace.contains("\\.")?namespace.substring(0, namespace.lastIndexOf('.')):"";
     }
-    return JavaTypes.OBJECT();
+    return result;
   }
 
-  protected SQLColumnPropertyInfo getColumnProperty(String columnName, String namespace, String tableName){
-    List<Pair<String, IFile>> allFilesByExtension = findAllFilesByExtension(DDL_EXTENSION);
-
-    while(!namespace.equals("")) {
-      Set<String> filesInCurrentDirectory = new HashSet<>();
-      for(Pair<String, IFile> pair : allFilesByExtension) {
-        String fileName = pair.getFirst();
-        String fqn = fileName.substring(0, fileName.length() - SQL_EXTENSION.length()).replace('/', '.');
-        if(fqn.contains(namespace)){
-          filesInCurrentDirectory.add(fqn);
-        }
+  /**
+   * A table declared in a ddl file, with its columns indexed by name.
+   */
+  private static class TableSymbol {
+    private final String _ddlName;
+    private final CreateTable _table;
+    private final Map<String, ColumnDefinition> _columns = new HashMap<>();
+    private final Map<String, ColumnDefinition> _columnsIgnoringCase = new HashMap<>();
+
+    TableSymbol(String ddlName, CreateTable table) {
+      _ddlName = ddlName;
+      _table = table;
+      for(ColumnDefinition col : table.getColumnDefinitions()) {
+        _columns.putIfAbsent(col.getColumnName(), col);
+        _columnsIgnoringCase.putIfAbsent(col.getColumnName().toLowerCase(), col);
       }
+    }
 
-      for(String fileinCD: filesInCurrentDirectory) {
-        ISQLDdlType currentType = getOrCreateDdlType(fileinCD);
-        List<CreateTable> tables = currentType.getTables();
-        for(CreateTable table: tables){
-          for(ColumnDefinition col: table.getColumnDefinitions()){
-            if(col.getColumnName().toLowerCase().equals(columnName.toLowerCase()) && table.getTableName().toLowerCase().equals(tableName)){
-              ISQLTableType cTable = (ISQLTableType) getType(fileinCD+"."+table.getTypeName());
-              SQLTableTypeInfo cInfo = (SQLTableTypeInfo)cTable.getTypeInfo();
-              SQLColumnPropertyInfo pInfo = (SQLColumnPropertyInfo)cInfo._propertiesMap.get(col.getPropertyName());
-              return pInfo;
-            }
-          }
-        }
-      }
-      namespace = namespace.contains("\\.")?namespace.substring(0, namespace.lastIndexOf('.')):"";
+    String getNamespace() {
+      int lastDot = _ddlName.lastIndexOf('.');
+      return lastDot < 0 ? "" : _ddlName.substring(0, lastDot);
     }
 
-    return null;
+    String getTypeName() {
+      return _ddlName + '.' + _table.getTypeName();
+    }
   }
 }
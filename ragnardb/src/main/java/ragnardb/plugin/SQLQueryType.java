@@ -17,12 +17,14 @@ public class SQLQueryType extends SQLTypeBase implements ISQLQueryType {
   }
 
   public ISQLTableType getTable(String name){
+    _plugin.addTableDependency(getName(), name);
     return _plugin.getTypeFromRelativeName(name.toLowerCase(), this.getNamespace());
   }
 
   public SQLPlugin getPlugin() {return _plugin;}
 
   public IType getColumn(String name, String tableName){
+    _plugin.addTableDependency(getName(), tableName);
     return _plugin.getColumnFromRelativeName(name, this.getNamespace(), tableName);
   }
 
@@ -35,6 +37,7 @@ public class SQLQueryType extends SQLTypeBase implements ISQLQueryType {
   }
 
   public SQLColumnPropertyInfo getColumnProperty(String name, String tableName){
+    _plugin.addTableDependency(getName(), tableName);
     return _plugin.getColumnProperty(name, this.getNamespace(), tableName);
   }
 
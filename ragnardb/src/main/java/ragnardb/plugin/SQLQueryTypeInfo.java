@@ -3,6 +3,7 @@ package ragnardb.plugin;
 import gw.lang.parser.resources.Res;
 import gw.lang.reflect.*;
 import gw.lang.reflect.java.JavaTypes;
+import gw.util.GosuExceptionUtil;
 import ragnardb.RagnarDB;
 import ragnardb.parser.ast.*;
 import ragnardb.runtime.*;
@@ -12,11 +13,11 @@ import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.*;
 
 public class SQLQueryTypeInfo extends SQLBaseTypeInfo {
   private ArrayList<JavaVar> coalescedVars;
-  private ITypeToSQLMetadata _md;
   private boolean isSelect;
 
   public SQLQueryTypeInfo(ISQLQueryType type) {
@@ -76,6 +77,15 @@ public class SQLQueryTypeInfo extends SQLBaseTypeInfo {
       ((ISQLQueryType) this.getOwnersType()).setResultType((ISQLQueryResultType) returnType);
     }
     ISQLTableType table = type.getTable(tree.getTables().get(0).toLowerCase());
+    SQLTemplate template = compileTemplate(type, tree);
+    ITypeToSQLMetadata md;
+    if(returnType instanceof ISQLQueryResultType){
+      md = new SQLQueryResultMetadata((ISQLQueryResultType) returnType);
+    } else if(returnType instanceof ISQLTableType){
+      md = new SQLMetadata();
+    } else {
+      md = new SQLQueryResultMetadata(table);
+    }
     IMethodInfo execute = new MethodInfoBuilder()
       .withName("execute")
       .withDescription("Executes the following query with replacement of variables")
@@ -83,48 +93,15 @@ public class SQLQueryTypeInfo extends SQLBaseTypeInfo {
       .withReturnType(isSelect ? JavaTypes.ITERABLE().getParameterizedType(returnType) : JavaTypes.INTEGER())
       .withStatic(true)
       .withCallHandler((ctx, args) -> {
-        ISQLQueryType owner = (ISQLQueryType) getOwnersType();
-        Statement statement = (Statement) owner.getParseTree();
-        ArrayList<JavaVar> variables = statement.getVariables();
-        List<Object> vars = new ArrayList<>();
+        List<Object> vars = template.bind(args);
         try {
-          String rawSQL = owner.getSqlSource();
-          String[] places = rawSQL.split("\n");
-          for (int j = 0; j < places.length; j++) {
-            int additionalBuffer = 0;
-            for (int i = 0; i < coalescedVars.size(); i++) {
-              for (JavaVar var : variables) {
-                if (var.equals(coalescedVars.get(i)) && (var.getLine() - 1) == j) {
-                  String currentLine = places[j];
-                  Object rep = args[i];
-                  String replacement = "?";
-                  vars.add(rep);
-                  String finalLine = currentLine.substring(0, var.getCol() - (j == 0 ? 1 : 2) + additionalBuffer)
-                    + replacement + currentLine.substring(var.getCol() - 1 + var.getSkiplen() + additionalBuffer);
-                  places[j] = finalLine;
-                  additionalBuffer += replacement.length();
-                  additionalBuffer -= var.getSkiplen();
-                }
-              }
-            }
-          }
-          String finalSQL = String.join("\n", places);
-          finalSQL = finalSQL.replace(";", "");
-//        System.out.println(finalSQL + " @SQLQueryTypeInfo 105"); debugging logging info
           if (isSelect) {
-            if (returnType instanceof ISQLQueryResultType) {
-              _md = new SQLQueryResultMetadata((ISQLQueryResultType) returnType);
-            } else if (returnType instanceof ISQLTableType) {
-              _md = new SQLMetadata();
-            } else {
-              _md = new SQLQueryResultMetadata(owner.getTable(statement.getTables().get(0)));
-            }
-            ExecutableQuery query = new ExecutableQuery(_md, returnType, finalSQL, returnType, table, vars);
-            query = query.setup();
-            return query;
+            return new ExecutableQuery(md, returnType, template.getSQL(), returnType, table, vars);
           } else {
-            PreparedStatement p = RagnarDB.prepareStatement(finalSQL, vars);
-            return p.executeUpdate();
+            // the pool caches the statement per connection, so the same template sql skips the prepare
+            try (PreparedStatement p = RagnarDB.prepareStatement(template.getSQL(), vars)) {
+              return p.executeUpdate();
+            }
           }
         } catch (Exception e) {
           e.printStackTrace();
@@ -133,9 +110,39 @@ public class SQLQueryTypeInfo extends SQLBaseTypeInfo {
       })
       .build(this);
     result.add(execute);
+    if(!isSelect) {
+      IMethodInfo executeAll = new MethodInfoBuilder()
+        .withName("executeAll")
+        .withDescription("Executes this statement once per list of arguments, sending them to the database in batches in a single transaction. Returns the update count of each")
+        .withParameters(new ParameterInfoBuilder()
+                          .withName("args")
+                          .withType(JavaTypes.LIST().getParameterizedType(JavaTypes.LIST().getParameterizedType(JavaTypes.OBJECT())))
+                          .withDescription("The arguments of each execution, in the order of execute's parameters"))
+        .withReturnType(JavaTypes.pINT().getArrayType())
+        .withStatic(true)
+        .withCallHandler((ctx, args) -> {
+          List<List<Object>> rows = (List<List<Object>>) args[0];
+          Iterable<List<Object>> bound = () -> rows.stream().map(row -> template.bind(row.toArray())).iterator();
+          try {
+            return RagnarDB.executeBatch(template.getSQL(), bound, RagnarDB.getBatchSize());
+          } catch (SQLException e) {
+            throw GosuExceptionUtil.forceThrow(e);
+          }
+        })
+        .build(this);
+      result.add(executeAll);
+    }
     return result;
   }
 
+  private SQLTemplate compileTemplate(ISQLQueryType type, Statement tree){
+    try {
+      return SQLTemplate.compile(type.getSqlSource(), tree.getVariables(), coalescedVars);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   private void setCoalescedVars(ArrayList<JavaVar> init){
     coalescedVars = new ArrayList<>();
     ArrayList<String> names = new ArrayList<>();
@@ -4,6 +4,7 @@ import ragnardb.runtime.*;
 
 import java.util.*;
 
+import gw.util.concurrent.LockingLazyVar;
 import gw.lang.reflect.IAnnotationInfo;
 import gw.lang.reflect.IPropertyAccessor;
 import gw.lang.reflect.IPropertyInfo;
@@ -30,6 +31,7 @@ public class SQLReferencePropertyInfo extends PropertyInfoBase implements IPrope
   private IType _propType;
   private IPropertyAccessor _accessor;
   private final ILocationInfo _location;
+  private final LockingLazyVar<ISQLTableType> _foreignTable;
 
   protected SQLReferencePropertyInfo(String refColumnName, String idColumnName, String foreignTableName, ISQLDdlType system,  IType propertyType, ITypeInfo container, int offset, int length)
   {
@@ -38,29 +40,26 @@ public class SQLReferencePropertyInfo extends PropertyInfoBase implements IPrope
     _propType = propertyType;
     _refColumnName = refColumnName;
     _idColumnName = idColumnName;
-    _accessor = new IPropertyAccessor()
+    _foreignTable = new LockingLazyVar<ISQLTableType>()
     {
       @Override
-      public Object getValue( Object obj )
+      protected ISQLTableType init()
       {
-        //Finding foreign table
         ISQLTableType foreignTable = null;
         for(ISQLTableType t : system.getTableTypes()){
           if(t.getRelativeName().equals(foreignTableName)){
             foreignTable = t;
           }
         }
-
-
-
-        Object ref = ((SQLRecord) obj).getRawValue(_refColumnName);
-        List args = new ArrayList<>();
-        args.add(ref);
-        SQLQuery query =  new SQLQuery<SQLRecord>(new SQLMetadata(),foreignTable);
-        return query.where(SQLConstraint.raw(_idColumnName + " = ? ", args));
-
-        //Is making a new metadata ok?
-        //return ((SQLRecord)obj).getRawValue( _columnName );
+        return foreignTable;
+      }
+    };
+    _accessor = new IPropertyAccessor()
+    {
+      @Override
+      public Object getValue( Object obj )
+      {
+        return ((SQLRecord) obj).getReference(SQLReferencePropertyInfo.this);
       }
 
       @Override
@@ -72,6 +71,37 @@ public class SQLReferencePropertyInfo extends PropertyInfoBase implements IPrope
     _location = new LocationInfo( offset, length, -1, -1, null );
   }
 
+  /**
+   * @return the query for the rows of the foreign table that the given record references (or that reference it)
+   */
+  public SQLQuery<SQLRecord> getReferenceQuery( SQLRecord record )
+  {
+    List<Object> args = new ArrayList<>();
+    args.add(record.getRawValue(_refColumnName));
+    SQLQuery<SQLRecord> query = new SQLQuery<>(new SQLMetadata(), getForeignTable());
+    return query.where(SQLConstraint.raw(_idColumnName + " = ? ", args));
+  }
+
+  public ISQLTableType getForeignTable()
+  {
+    return _foreignTable.get();
+  }
+
+  /**
+   * @return the column of this record's table holding the key value
+   */
+  public String getRefColumnName()
+  {
+    return _refColumnName;
+  }
+
+  /**
+   * @return the column of the foreign table matched against the key value
+   */
+  public String getIdColumnName()
+  {
+    return _idColumnName;
+  }
 
   @Override
   public boolean isReadable()
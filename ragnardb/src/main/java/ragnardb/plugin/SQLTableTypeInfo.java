@@ -20,8 +20,8 @@ import gw.lang.reflect.gs.IGosuClass;
 import gw.lang.reflect.java.JavaTypes;
 import gw.util.concurrent.LockingLazyVar;
 import ragnardb.api.IModelConfig;
-import ragnardb.parser.ast.Constraint;
 import ragnardb.parser.ast.CreateTable;
+import ragnardb.runtime.ColumnLayout;
 import ragnardb.runtime.ModelConfig;
 import ragnardb.runtime.SQLConstraint;
 import ragnardb.runtime.SQLMetadata;
@@ -31,6 +31,8 @@ import ragnardb.utils.NounHandler;
 
 import java.net.MalformedURLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class SQLTableTypeInfo extends SQLBaseTypeInfo {
@@ -38,10 +40,126 @@ public class SQLTableTypeInfo extends SQLBaseTypeInfo {
   private ISQLTableType _parent;
   private ISQLDdlType _system;
   private CreateTable _table;
+  private ColumnLayout _layout;
   private String _classTableName;
-  private IGosuClass _domainLogic;
-  private IConstructorHandler _constructor;
   private final ILocationInfo _location;
+
+  // Members are generated on demand: a lookup by name builds only the property or finder it asks for,
+  // and the full lists are only assembled when something enumerates them.
+  private final Map<String, IPropertyInfo> _declaredProperties = new ConcurrentHashMap<>();
+  private final Map<String, IMethodInfo> _finders = new ConcurrentHashMap<>();
+  private final LockingLazyVar<List<String>> _declaredPropertyNames = new LockingLazyVar<List<String>>()
+  {
+    @Override
+    protected List<String> init()
+    {
+      Set<String> names = new LinkedHashSet<>();
+      for( ColumnDefinition column : _table.getColumnDefinitions() )
+      {
+        names.add( column.getPropertyName() );
+      }
+      for( SQLForeignKeyGraph.Reference ref : getReferencesFrom() )
+      {
+        names.add( ref.getForeignTable().getTypeName() );
+      }
+      for( SQLForeignKeyGraph.Reference ref : getReferencesTo() )
+      {
+        names.add( ref.getTable().getTypeName() );
+      }
+      names.add( "All" );
+      names.add( "IsValid" );
+      names.add( "errors" );
+      return new ArrayList<>( names );
+    }
+  };
+  private final LockingLazyVar<List<IPropertyInfo>> _properties = new LockingLazyVar<List<IPropertyInfo>>()
+  {
+    @Override
+    protected List<IPropertyInfo> init()
+    {
+      Set<String> names = new LinkedHashSet<>( _declaredPropertyNames.get() );
+      names.addAll( _domainProperties.get().keySet() );
+      List<IPropertyInfo> properties = new ArrayList<>();
+      for( String name : names )
+      {
+        properties.add( getProperty( name ) );
+      }
+      return properties;
+    }
+  };
+  private final LockingLazyVar<MethodList> _baseMethods = new LockingLazyVar<MethodList>()
+  {
+    @Override
+    protected MethodList init()
+    {
+      MethodList methodList = new MethodList();
+      methodList.add( generateCreateMethod() );
+      methodList.add( generateCreateAllMethod() );
+      methodList.add( generateSaveMethod() );
+      methodList.add( generateWhereMethod() );
+      methodList.add( generateSelectMethod() );
+      methodList.addAll( maybeGetDomainMethods() );
+      return methodList;
+    }
+  };
+  private final LockingLazyVar<MethodList> _methods = new LockingLazyVar<MethodList>()
+  {
+    @Override
+    protected MethodList init()
+    {
+      MethodList methodList = new MethodList();
+      for( String propertyName : _declaredPropertyNames.get() )
+      {
+        methodList.add( getFinder( "findBy" + propertyName ) );
+        methodList.add( getFinder( "findAllBy" + propertyName.substring( 0, 1 ).toUpperCase() + propertyName.substring( 1 ) ) );
+      }
+      methodList.addAll( _baseMethods.get() );
+      return methodList;
+    }
+  };
+  private final LockingLazyVar<List<IConstructorInfo>> _constructors = new LockingLazyVar<List<IConstructorInfo>>()
+  {
+    @Override
+    protected List<IConstructorInfo> init()
+    {
+      return createConstructorInfos();
+    }
+  };
+  private final LockingLazyVar<IGosuClass> _domainLogic = new LockingLazyVar<IGosuClass>()
+  {
+    @Override
+    protected IGosuClass init()
+    {
+      return maybeGetDomainLogic();
+    }
+  };
+  private final LockingLazyVar<Map<String, IPropertyInfo>> _domainProperties = new LockingLazyVar<Map<String, IPropertyInfo>>()
+  {
+    @Override
+    protected Map<String, IPropertyInfo> init()
+    {
+      Map<String, IPropertyInfo> properties = new LinkedHashMap<>();
+      for( IPropertyInfo prop : maybeGetDomainProperties() )
+      {
+        properties.put( prop.getName(), prop );
+      }
+      return properties;
+    }
+  };
+  private final LockingLazyVar<Supplier<SQLRecord>> _recordFactory = new LockingLazyVar<Supplier<SQLRecord>>()
+  {
+    @Override
+    protected Supplier<SQLRecord> init()
+    {
+      final IGosuClass domainLogic = _domainLogic.get();
+      final IConstructorHandler ctor = domainLogic == null ? null : domainLogic.getTypeInfo().getConstructor().getConstructor();
+      return () -> {
+        SQLRecord instance = ctor == null ? new SQLRecord() : (SQLRecord)ctor.newInstance();
+        instance.setConfig( _modelConfig.get() );
+        return instance;
+      };
+    }
+  };
   private LockingLazyVar<IModelConfig> _modelConfig = new LockingLazyVar<IModelConfig>()
   {
     @Override
@@ -49,10 +167,11 @@ public class SQLTableTypeInfo extends SQLBaseTypeInfo {
     {
       final String tableName = getOwnersType().getTable().getTableName();
       final String idColumn = "id";
-      ModelConfig config = new ModelConfig( tableName, idColumn, getColumnNames() );
-      if( _domainLogic != null )
+      ModelConfig config = new ModelConfig( tableName, idColumn, _layout );
+      IGosuClass domainLogic = _domainLogic.get();
+      if( domainLogic != null )
       {
-        SQLRecord prototypeObject = (SQLRecord)_domainLogic.getTypeInfo().getConstructor().getConstructor().newInstance();
+        SQLRecord prototypeObject = (SQLRecord)domainLogic.getTypeInfo().getConstructor().getConstructor().newInstance();
         prototypeObject.configure( config );
       }
       return config;
@@ -64,7 +183,7 @@ public class SQLTableTypeInfo extends SQLBaseTypeInfo {
     _parent = type;
     _system = system;
     _table = table;
-    resolveProperties(type);
+    _layout = new ColumnLayout( getColumnNames() );
     _classTableName = type.getName();
     try
     {
@@ -76,100 +195,159 @@ public class SQLTableTypeInfo extends SQLBaseTypeInfo {
     }
   }
 
-  private void resolveProperties( ISQLTableType type ) {
-
-
-    _propertiesList = new ArrayList<>();
-    _propertiesMap = new HashMap<>();
-
-
-    //Get column References
-    List<ColumnDefinition> columns = type.getColumnDefinitions();
-    for(ColumnDefinition column : columns) {
-      SQLColumnPropertyInfo prop = new SQLColumnPropertyInfo(column.getColumnName(), column.getPropertyName(),
-        getGosuType(column.getSQLType()), this, column.getOffset(), column.getLength());
-      _propertiesMap.put(prop.getName(), prop);
-      _propertiesList.add( prop );
-    }
-
-    //Adding Foreign Key References that this table does
+  @Override
+  public List<? extends IPropertyInfo> getProperties() {
+    return _properties.get();
+  }
 
-    for( Constraint c : _table.getConstraints()) {
-      if (c.getType() == Constraint.constraintType.FOREIGN && c.getColumnNames().size() >= 1 && c.getReferentialColumnNames().size() >= 1) {
-        String keyName = c.getColumnNames().get(0);
-        ColumnDefinition referer = _table.getColumnDefinitionByName(keyName);
+  @Override
+  public IPropertyInfo getProperty(CharSequence propName) {
+    String name = propName.toString();
+    IPropertyInfo prop = _domainProperties.get().get(name);
+    return prop != null ? prop : getDeclaredProperty(name);
+  }
 
-        CreateTable foreignTable = null;
-        for (CreateTable possibleForiegnTable : _system.getTables()) {
-          if (possibleForiegnTable.getTableName().equals(c.getReferentialName())) {
-            foreignTable = possibleForiegnTable;
-          }
-        }
-        if (foreignTable != null) {
-          String foreignName = c.getReferentialColumnNames().get(0);
-          ColumnDefinition referee = foreignTable.getColumnDefinitionByName(foreignName);
+  @Override
+  public MethodList getMethods() {
+    return _methods.get();
+  }
 
+  @Override
+  public IMethodInfo getCallableMethod(CharSequence strMethod, IType... params) {
+    return FIND.callableMethod( getCandidateMethods(strMethod.toString()), strMethod, params );
+  }
 
-          SQLReferencePropertyInfo refProp = new SQLReferencePropertyInfo(referer.getColumnName(), referee.getPropertyName(),
-                  foreignTable.getTypeName(),
-                  _system,
-                  JavaTypes.getGosuType(SQLQuery.class).getParameterizedType(this.getOwnersType()),
-                  this, referer.getOffset(), referer.getLength());
+  @Override
+  public IMethodInfo getMethod(CharSequence methodName, IType... params) {
+    return FIND.method( getCandidateMethods(methodName.toString()), methodName, params );
+  }
 
-          _propertiesMap.put(refProp.getName(), refProp);
-          _propertiesList.add(refProp);
-        }
+  @Override
+  public List<? extends IConstructorInfo> getConstructors() {
+    return _constructors.get();
+  }
 
+  /**
+   * @return the methods that could be named methodName, without generating the finders of every other property
+   */
+  private MethodList getCandidateMethods(String methodName) {
+    if(_methods.isLoaded()) {
+      return _methods.get();
+    }
+    IMethodInfo finder = getFinder(methodName);
+    if(finder == null) {
+      return _baseMethods.get();
+    }
+    MethodList candidates = new MethodList(_baseMethods.get());
+    candidates.add(finder);
+    return candidates;
+  }
 
+  /**
+   * @return the findBy or findAllBy method of the given name, or null if it names no property of this table
+   */
+  private IMethodInfo getFinder(String methodName) {
+    IMethodInfo finder = _finders.get(methodName);
+    if(finder != null) {
+      return finder;
+    }
+    if(methodName.startsWith("findAllBy")) {
+      String suffix = methodName.substring("findAllBy".length());
+      IPropertyInfo prop = getDeclaredProperty(suffix);
+      if(prop == null && !suffix.isEmpty()) {
+        prop = getDeclaredProperty(suffix.substring(0, 1).toLowerCase() + suffix.substring(1));
       }
+      finder = prop == null ? null : generateFindByAllMethod(prop);
     }
+    else if(methodName.startsWith("findBy")) {
+      IPropertyInfo prop = getDeclaredProperty(methodName.substring("findBy".length()));
+      finder = prop == null ? null : generateFindByMethod(prop);
+    }
+    if(finder == null) {
+      return null;
+    }
+    IMethodInfo existing = _finders.putIfAbsent(methodName, finder);
+    return existing != null ? existing : finder;
+  }
 
-      for(CreateTable foreignTable : _system.getTables()){
-
-        for( Constraint cons : foreignTable.getConstraints()) {
-
-          if (cons.getType() == Constraint.constraintType.FOREIGN && cons.getColumnNames().size() >= 1 && cons.getReferentialColumnNames().size() >= 1) {
-            if (cons.getReferentialName().equals(_table.getTableName())) {
-
-              String localKey = cons.getReferentialColumnNames().get(0);
-              ColumnDefinition referee = _table.getColumnDefinitionByName(localKey);
-
-              String foreignName = cons.getColumnNames().get(0);
-              ColumnDefinition referer = foreignTable.getColumnDefinitionByName(foreignName);
-
+  /**
+   * @return the column, reference or built in property of the given name, generating it on first use
+   */
+  private IPropertyInfo getDeclaredProperty(String name) {
+    IPropertyInfo prop = _declaredProperties.get(name);
+    if(prop != null) {
+      return prop;
+    }
+    prop = createDeclaredProperty(name);
+    if(prop == null) {
+      return null;
+    }
+    IPropertyInfo existing = _declaredProperties.putIfAbsent(name, prop);
+    return existing != null ? existing : prop;
+  }
 
-              if (referee != null && referer != null) {
-                SQLReferencePropertyInfo refProp = new SQLReferencePropertyInfo(referee.getColumnName(), referer.getPropertyName(),
-                  foreignTable.getTypeName(),
-                  _system,
-                  JavaTypes.getGosuType(SQLQuery.class).getParameterizedType(this.getOwnersType()),
-                  this, referer.getOffset(), referer.getLength());
+  private IPropertyInfo createDeclaredProperty(String name) {
+    switch(name) {
+      case "errors":
+        return generateErrorsProperty();
+      case "IsValid":
+        return generateValidProperty();
+      case "All":
+        return generateAllProperty();
+    }
 
-                _propertiesMap.put(refProp.getName(), refProp);
-                _propertiesList.add(refProp);
-              }
-              else{
-                System.err.println("Error: Foreign Key Declaration does not match with table columns");
-              }
-            }
-          }
-        }
+    // Later declarations win, as they did when all the properties were put into one map
+    SQLForeignKeyGraph.Reference reverse = null;
+    for(SQLForeignKeyGraph.Reference ref : getReferencesTo()) {
+      if(ref.getTable().getTypeName().equals(name)) {
+        reverse = ref;
+      }
+    }
+    if(reverse != null) {
+      return new SQLReferencePropertyInfo(reverse.getForeignColumn().getColumnName(), reverse.getColumn().getColumnName(),
+        reverse.getTable().getTypeName(),
+        _system,
+        JavaTypes.getGosuType(SQLQuery.class).getParameterizedType(this.getOwnersType()),
+        this, reverse.getColumn().getOffset(), reverse.getColumn().getLength());
     }
 
-    IPropertyInfo allProp = generateAllProperty();
-    _propertiesList.add( allProp );
-    _propertiesMap.put( allProp.getName(), allProp );
+    SQLForeignKeyGraph.Reference forward = null;
+    for(SQLForeignKeyGraph.Reference ref : getReferencesFrom()) {
+      if(ref.getForeignTable().getTypeName().equals(name)) {
+        forward = ref;
+      }
+    }
+    if(forward != null) {
+      return new SQLReferencePropertyInfo(forward.getColumn().getColumnName(), forward.getForeignColumn().getColumnName(),
+        forward.getForeignTable().getTypeName(),
+        _system,
+        JavaTypes.getGosuType(SQLQuery.class).getParameterizedType(this.getOwnersType()),
+        this, forward.getColumn().getOffset(), forward.getColumn().getLength());
+    }
 
-    IPropertyInfo validProp = generateValidProperty();
-    _propertiesList.add( validProp );
-    _propertiesMap.put( validProp.getName(), validProp );
+    ColumnDefinition match = null;
+    for(ColumnDefinition column : _table.getColumnDefinitions()) {
+      if(column.getPropertyName().equals(name)) {
+        match = column;
+      }
+    }
+    if(match != null) {
+      return new SQLColumnPropertyInfo(match.getColumnName(), match.getPropertyName(),
+        getGosuType(match.getSQLType()), this, _layout, match.getOffset(), match.getLength());
+    }
+    return null;
+  }
 
-    // Adding Foreign Key References TO this table (The reverse query) TODO
+  private List<SQLForeignKeyGraph.Reference> getReferencesFrom() {
+    return _system.getForeignKeys().getReferencesFrom(_table.getTableName());
+  }
 
-    _domainLogic = maybeGetDomainLogic();
+  private List<SQLForeignKeyGraph.Reference> getReferencesTo() {
+    return _system.getForeignKeys().getReferencesTo(_table.getTableName());
+  }
 
-    //resolving errors property
-    IPropertyInfo errorsList = new PropertyInfoBuilder()
+  private IPropertyInfo generateErrorsProperty() {
+    return new PropertyInfoBuilder()
       .withName("errors")
       .withDescription("Gets the validation errors present")
       .withWritable(false)
@@ -196,62 +374,21 @@ public class SQLTableTypeInfo extends SQLBaseTypeInfo {
         }
       })
       .build(this);
-
-    _propertiesList.add(errorsList);
-    _propertiesMap.put("errors", errorsList);
-
-    createMethodInfos();
-    createConstructorInfos();
   }
 
-  private void createConstructorInfos() {
+  private List<IConstructorInfo> createConstructorInfos() {
     List<IConstructorInfo> constructorInfos = new ArrayList<>();
 
-    IType instanceType = _domainLogic == null ? TypeSystem.get(SQLRecord.class) : _domainLogic;
-    final IConstructorInfo ctor = instanceType.getTypeInfo().getConstructor();
-    _constructor = ( args ) -> {
-      SQLRecord instance = (SQLRecord)ctor.getConstructor().newInstance();
-      instance.setConfig( _modelConfig.get() );
-      return instance;
-    };
+    IConstructorHandler constructor = ( args ) -> getRecordFactory().get();
 
     IConstructorInfo constructorMethod = new ConstructorInfoBuilder()
       .withDescription( "Creates a new Table object" )
       .withParameters()
-      .withConstructorHandler( _constructor ).build(this);
+      .withConstructorHandler( constructor ).build(this);
 
     constructorInfos.add(constructorMethod);
 
-    _constructorList = constructorInfos;
-  }
-
-  private void createMethodInfos() {
-    MethodList methodList = new MethodList();
-
-    for (String propertyName : _propertiesMap.keySet()) {
-      IPropertyInfo prop = _propertiesMap.get(propertyName);
-
-      methodList.add(generateFindByMethod(prop));
-      methodList.add(generateFindByAllMethod(prop));
-    }
-
-    methodList.add(generateCreateMethod());
-    methodList.add(generateSaveMethod());
-    methodList.add(generateWhereMethod());
-    methodList.add(generateSelectMethod());
-
-    List<? extends IMethodInfo> domainMethods = maybeGetDomainMethods();
-    List<? extends IPropertyInfo> domainProperties = maybeGetDomainProperties();
-
-    methodList.addAll(domainMethods);
-
-    _methodList = methodList;
-
-    for(IPropertyInfo domainProperty : domainProperties) {
-      _propertiesMap.put(domainProperty.getName(), domainProperty);
-      _propertiesList.add(domainProperty);
-    }
-
+    return constructorInfos;
   }
 
   private IMethodInfo generateFindByMethod(IPropertyInfo prop) {
@@ -268,8 +405,7 @@ public class SQLTableTypeInfo extends SQLBaseTypeInfo {
         .withCallHandler((ctx, args) -> {
           SQLQuery query = new SQLQuery(_md, getOwnersType());
           SQLConstraint constraint = SQLConstraint.isComparator(prop, args[0], "=");
-          query = query.where(constraint);
-          return query.iterator().hasNext() ? query.iterator().next() : null;
+          return query.where(constraint).first();
         })
         .build(this);
   }
@@ -304,6 +440,19 @@ public class SQLTableTypeInfo extends SQLBaseTypeInfo {
         .build(this);
   }
 
+  private IMethodInfo generateCreateAllMethod() {
+    return new MethodInfoBuilder()
+        .withName("createAll")
+        .withDescription("Creates new table entries in batches, returning the number created")
+        .withParameters(new ParameterInfoBuilder()
+          .withName("records")
+          .withType(JavaTypes.ITERABLE().getParameterizedType(this.getOwnersType())))
+        .withReturnType(JavaTypes.pINT())
+        .withStatic(true)
+        .withCallHandler((ctx, args) -> SQLRecord.createAll((Iterable<SQLRecord>) args[0]))
+        .build(this);
+  }
+
   private IMethodInfo generateSaveMethod() {
     return new MethodInfoBuilder()
       .withName("save")
@@ -385,6 +534,21 @@ public class SQLTableTypeInfo extends SQLBaseTypeInfo {
 
   }
 
+  /**
+   * Creates configured instances of this table's records, as the generated constructor does, without going
+   * through a constructor lookup for each one.
+   */
+  public Supplier<SQLRecord> getRecordFactory() {
+    return _recordFactory.get();
+  }
+
+  /**
+   * @return true if this table has foreign key reference properties, in either direction
+   */
+  public boolean hasReferences() {
+    return !getReferencesFrom().isEmpty() || !getReferencesTo().isEmpty();
+  }
+
   public ISQLTableType getOwnersType() {
     return (ISQLTableType) super.getOwnersType();
   }
@@ -425,9 +589,10 @@ public class SQLTableTypeInfo extends SQLBaseTypeInfo {
   }
 
   private List<? extends IMethodInfo> maybeGetDomainMethods() {
-    if ( _domainLogic != null)
+    IGosuClass domainLogic = _domainLogic.get();
+    if ( domainLogic != null)
     {
-      return _domainLogic.getTypeInfo().getDeclaredMethods()
+      return domainLogic.getTypeInfo().getDeclaredMethods()
         .stream()
         .filter(IAttributedFeatureInfo::isPublic)
         .collect( Collectors.toList() );
@@ -439,9 +604,10 @@ public class SQLTableTypeInfo extends SQLBaseTypeInfo {
   }
 
   private List<? extends IPropertyInfo> maybeGetDomainProperties() {
-    if ( _domainLogic != null)
+    IGosuClass domainLogic = _domainLogic.get();
+    if ( domainLogic != null)
     {
-      return _domainLogic.getTypeInfo().getDeclaredProperties()
+      return domainLogic.getTypeInfo().getDeclaredProperties()
           .stream()
           .filter(IAttributedFeatureInfo::isPublic)
           .collect(Collectors.toList());
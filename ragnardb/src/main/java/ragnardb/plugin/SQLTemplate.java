@@ -0,0 +1,68 @@
+package ragnardb.plugin;
+
+import ragnardb.parser.ast.JavaVar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The source of a .sql file compiled once into parameterized sql: every @variable replaced with a ? and,
+ * for each ?, the index of the call argument bound to it. Executing the query only binds the arguments.
+ */
+class SQLTemplate {
+  private final String _sql;
+  private final int[] _bindings;
+
+  private SQLTemplate(String sql, int[] bindings) {
+    _sql = sql;
+    _bindings = bindings;
+  }
+
+  /**
+   * @param source the sql source
+   * @param variables every occurrence of a variable in the source
+   * @param parameters the distinct variables, in the order of the call arguments
+   */
+  static SQLTemplate compile(String source, List<JavaVar> variables, List<JavaVar> parameters) {
+    List<JavaVar> occurrences = new ArrayList<>(variables);
+    occurrences.sort(Comparator.comparingInt(JavaVar::getLine).thenComparingInt(JavaVar::getCol));
+    int[] bindings = new int[occurrences.size()];
+    String[] lines = source.split("\n");
+    StringBuilder sql = new StringBuilder(source.length());
+    int next = 0;
+    for(int j = 0; j < lines.length; j++) {
+      String line = lines[j];
+      int copied = 0;
+      while(next < occurrences.size() && occurrences.get(next).getLine() - 1 == j) {
+        JavaVar var = occurrences.get(next);
+        // the tokenizer's columns are 1-based on the first line and one further along on the lines after it
+        int start = var.getCol() - (j == 0 ? 1 : 2);
+        sql.append(line, copied, start).append('?');
+        copied = start + var.getSkiplen();
+        bindings[next++] = parameters.indexOf(var);
+      }
+      sql.append(line, copied, line.length());
+      if(j < lines.length - 1) {
+        sql.append('\n');
+      }
+    }
+    return new SQLTemplate(sql.toString().replace(";", ""), bindings);
+  }
+
+  String getSQL() {
+    return _sql;
+  }
+
+  /**
+   * @return the values to bind, in the order of the ?s in the sql
+   */
+  List<Object> bind(Object[] args) {
+    Object[] values = new Object[_bindings.length];
+    for(int i = 0; i < _bindings.length; i++) {
+      values[i] = args[_bindings[i]];
+    }
+    return Arrays.asList(values);
+  }
+}
@@ -13,8 +13,6 @@ import gw.lang.reflect.gs.ISourceFileHandle;
 import gw.lang.reflect.module.IModule;
 import gw.util.StreamUtil;
 import gw.util.concurrent.LockingLazyVar;
-import ragnardb.parser.SQLParser;
-import ragnardb.parser.SQLTokenizer;
 import ragnardb.parser.ast.SQL;
 
 import java.io.File;
@@ -56,8 +54,7 @@ public abstract class SQLTypeBase extends TypeBase implements ISQLTypeBase {
 
   private void setParseTree(){
     try {
-      SQLParser p = new SQLParser(new SQLTokenizer(getReader(), getFile().getName()));
-      _parseTree = p.parse();
+      _parseTree = _plugin.getParseTrees().get(getFile());
     } catch (Exception e) {
       throw new RuntimeException( e );
     }
@@ -0,0 +1,60 @@
+package ragnardb.runtime;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The columns of a table in declaration order. Records of that table store their values in an array
+ * indexed by column ordinal (a slot) rather than in a map keyed by column name.
+ *
+ * Column names are case insensitive. The declared, lower and upper case spellings are all indexed up
+ * front so that the usual lookups, from generated properties and from result set metadata, don't have
+ * to normalize the name first.
+ */
+public final class ColumnLayout
+{
+  private final List<String> _columns;
+  private final Map<String, Integer> _slots = new HashMap<>();
+
+  public ColumnLayout( List<String> columns )
+  {
+    _columns = Collections.unmodifiableList( columns );
+    for( int i = 0; i < columns.size(); i++ )
+    {
+      String column = columns.get( i );
+      _slots.put( column, i );
+      _slots.put( column.toLowerCase(), i );
+      _slots.put( column.toUpperCase(), i );
+    }
+  }
+
+  public int size()
+  {
+    return _columns.size();
+  }
+
+  public List<String> getColumns()
+  {
+    return _columns;
+  }
+
+  public String getColumn( int slot )
+  {
+    return _columns.get( slot );
+  }
+
+  /**
+   * @return the slot holding the given column, or -1 if this layout has no such column
+   */
+  public int slotOf( String column )
+  {
+    Integer slot = _slots.get( column );
+    if( slot == null )
+    {
+      slot = _slots.get( column.toLowerCase() );
+    }
+    return slot == null ? -1 : slot;
+  }
+}
@@ -3,7 +3,6 @@ package ragnardb.runtime;
 import gw.lang.reflect.IType;
 import gw.lang.reflect.java.JavaTypes;
 import gw.util.GosuExceptionUtil;
-import ragnardb.plugin.ColumnDefinition;
 import ragnardb.plugin.ISQLQueryResultType;
 import ragnardb.plugin.ISQLTableType;
 
@@ -28,114 +27,62 @@ public class ExecutableQuery<T> extends SQLQuery<T>{
 //    System.out.println(statement + " @ExecutableQuery 27"); debugging logging info
   }
 
-  public ExecutableQuery<T> setup(){
-    ExecutableQuery<T> query = new ExecutableQuery<T>(_metadata, _rootType, this.statement, returnType, returnTable, vals);
-//    System.out.println(query.statement + " @ExecutableQuery 32");
-    return query;
-  }
-
+  /**
+   * Streams the rows of the statement, mapping each as it is read: records of the returned table or result
+   * type, or else the value of the single selected column. The sql is the file's own, so maxRows is only
+   * honored by reading no further.
+   */
   @Override
-  public Iterator<T> iterator(){return this.execQuery().iterator();}
-
-  private Iterable<T> execQuery(){
+  protected SQLCursor<T> open(int maxRows){
     try{
-      List<T> results = new LinkedList<>();
-      Iterable<SQLRecord> records;
-      if(!(returnType instanceof ISQLQueryResultType || returnType instanceof ISQLTableType)){
-        records = SQLRecord.executeStatement(statement, vals, returnTable);
-      } else {
-        records = SQLRecord.executeStatement(statement, vals, _rootType);
+      if(returnType instanceof ISQLTableType && ReferenceLoader.hasReferences(_rootType)){
+        SQLCursor<SQLRecord> records = SQLRecord.select(statement, vals, _rootType, 0);
+        return (SQLCursor<T>)new ReferenceLoader.BatchingCursor(records, Collections.emptyList());
       }
-//      System.out.println(this.statement + " @ExecutableQuery 49");
-      if(returnType instanceof ISQLTableType){
-        for(SQLRecord record: records){
-          results.add((T) record);
-        }
-      } else if(returnType instanceof ISQLQueryResultType){
-        for(SQLRecord record: records){
-          results.add((T) record);
-        }
-      } else {
-        List result;
-        if(returnType == JavaTypes.STRING()){
-          result = new LinkedList<String>();
-          for(SQLRecord record: records){
-            for(ColumnDefinition col: returnTable.getTable().getColumnDefinitions()){
-              Object obj = record.getRawValue(col.getColumnName());
-              if(obj != null){
-                result.add((String) obj);
-              }
-            }
-          }
-        } else if(returnType == JavaTypes.CHARACTER()){
-          result = new LinkedList<String>();
-          for(SQLRecord record: records){
-            for(ColumnDefinition col: returnTable.getTable().getColumnDefinitions()){
-              Object obj = record.getRawValue(col.getColumnName());
-              if(obj != null){
-                result.add(((Character) obj).toString());
-              }
-            }
-          }
-        } else if(returnType == JavaTypes.INTEGER()){
-          result = new LinkedList<Integer>();
-          for(SQLRecord record: records){
-            for(ColumnDefinition col: returnTable.getTable().getColumnDefinitions()){
-              Object obj = record.getRawValue(col.getColumnName());
-              if(obj != null){
-                result.add((Integer) obj);
-              }
-            }
-          }
-        } else if(returnType == JavaTypes.LONG()){
-          result = new LinkedList<Long>();
-          for(SQLRecord record: records){
-            for(ColumnDefinition col: returnTable.getTable().getColumnDefinitions()){
-              Object obj = record.getRawValue(col.getColumnName());
-              if(obj != null){
-                result.add((Long) obj);
-              }
-            }
-          }
-        } else if(returnType == JavaTypes.DOUBLE()){
-          result = new LinkedList<Double>();
-          for(SQLRecord record: records){
-            for(ColumnDefinition col: returnTable.getTable().getColumnDefinitions()){
-              Object obj = record.getRawValue(col.getColumnName());
-              if(obj != null){
-                result.add((Double) obj);
-              }
-            }
-          }
-        } else if(returnType == JavaTypes.BOOLEAN()){
-          result = new LinkedList<Boolean>();
-          for(SQLRecord record: records){
-            for(ColumnDefinition col: returnTable.getTable().getColumnDefinitions()){
-              Object obj = record.getRawValue(col.getColumnName());
-              if(obj != null){
-                result.add((Boolean) obj);
-              }
-            }
-          }
-        } else {
-          result = new LinkedList<>();
-          for(SQLRecord record: records){
-            for(ColumnDefinition col: returnTable.getTable().getColumnDefinitions()){
-              Object obj = record.getRawValue(col.getColumnName());
-              if(obj != null){
-                result.add(obj);
-              }
-            }
-          }
-        }
-        for(Object o : result){
-          results.add((T) o);
-        }
+      if(returnType instanceof ISQLTableType || returnType instanceof ISQLQueryResultType){
+        return SQLRecord.select(statement, vals, _rootType, 0);
       }
-      return results;
+      return new ScalarCursor<>(SQLRecord.selectSingleColumn(statement, vals, 0), returnType == JavaTypes.CHARACTER());
     }catch(SQLException e){
       throw GosuExceptionUtil.forceThrow(e);
     }
   }
 
+  /**
+   * The values of a single column, skipping nulls.
+   */
+  private static class ScalarCursor<T> implements SQLCursor<T> {
+    private final SQLCursor<Object> _values;
+    private final boolean _asString;
+    private Object _next;
+
+    ScalarCursor(SQLCursor<Object> values, boolean asString){
+      _values = values;
+      _asString = asString;
+    }
+
+    @Override
+    public boolean hasNext(){
+      while(_next == null && _values.hasNext()){
+        _next = _values.next();
+      }
+      return _next != null;
+    }
+
+    @Override
+    public T next(){
+      if(!hasNext()){
+        throw new NoSuchElementException();
+      }
+      Object value = _next;
+      _next = null;
+      return (T)(_asString ? value.toString() : value);
+    }
+
+    @Override
+    public void close(){
+      _values.close();
+    }
+  }
+
 }
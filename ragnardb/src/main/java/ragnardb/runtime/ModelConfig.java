@@ -2,7 +2,6 @@ package ragnardb.runtime;
 
 import gw.lang.reflect.features.IPropertyReference;
 import gw.lang.reflect.features.PropertyReference;
-import javafx.util.Pair;
 import ragnardb.api.IModelConfig;
 import ragnardb.plugin.SQLColumnPropertyInfo;
 import ragnardb.runtime.validation.ContentValidator;
@@ -16,6 +15,7 @@ import java.util.*;
 public class ModelConfig implements IModelConfig
 {
   private final List<String> _columns;
+  private final ColumnLayout _layout;
   private String _tableName;
   private String _idColumn;
   private Map<String, List<IFieldValidator>> _validatorsByField = new HashMap<>();
@@ -23,10 +23,27 @@ public class ModelConfig implements IModelConfig
   private List<IPropertyReference> propertyReferences = new ArrayList<>();
 
   public ModelConfig( String tableName, String idColumn, List<String> columns )
+  {
+    this( tableName, idColumn, columns, columns.isEmpty() ? null : new ColumnLayout( columns ) );
+  }
+
+  public ModelConfig( String tableName, String idColumn, ColumnLayout layout )
+  {
+    this( tableName, idColumn, layout.getColumns(), layout );
+  }
+
+  private ModelConfig( String tableName, String idColumn, List<String> columns, ColumnLayout layout )
   {
     setTableName( tableName );
     setIdColumn( idColumn );
     _columns = columns;
+    _layout = layout;
+  }
+
+  @Override
+  public ColumnLayout getColumnLayout()
+  {
+    return _layout;
   }
 
   public String getTableName()
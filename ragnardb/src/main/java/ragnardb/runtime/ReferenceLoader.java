@@ -0,0 +1,266 @@
+package ragnardb.runtime;
+
+import gw.lang.reflect.IType;
+import gw.lang.reflect.ITypeInfo;
+import gw.util.GosuExceptionUtil;
+import ragnardb.RagnarDB;
+import ragnardb.plugin.SQLReferencePropertyInfo;
+import ragnardb.plugin.SQLTableTypeInfo;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Loads a foreign key reference for many records at once: the distinct key values of the records are looked up
+ * with one IN query (per batch of {@link RagnarDB#getBatchSize()} values), and each record gets the matching rows
+ * attached so that reading its reference property doesn't go back to the database.
+ *
+ * References are loaded either up front, for references named with {@link SQLQuery#include}, or lazily: records
+ * read from the same batch of results share a {@link Batch}, and the first read of a reference on any of them
+ * loads it for all of them, on the connection the results are read from.
+ */
+class ReferenceLoader
+{
+  /**
+   * @return true if records of the given type have reference properties, and so are worth reading in batches
+   */
+  static boolean hasReferences( IType type )
+  {
+    ITypeInfo typeInfo = type.getTypeInfo();
+    return typeInfo instanceof SQLTableTypeInfo && ((SQLTableTypeInfo)typeInfo).hasReferences();
+  }
+
+  static void load( List<? extends SQLRecord> records, SQLReferencePropertyInfo reference )
+  {
+    Map<Object, List<SQLRecord>> rowsByKey = new HashMap<>();
+    List<Object> keys = new ArrayList<>();
+    for( SQLRecord record : records )
+    {
+      Object value = record.getRawValue( reference.getRefColumnName() );
+      if( value != null && rowsByKey.putIfAbsent( key( value ), new ArrayList<>() ) == null )
+      {
+        keys.add( value );
+      }
+    }
+
+    int batchSize = RagnarDB.getBatchSize();
+    for( int start = 0; start < keys.size(); start += batchSize )
+    {
+      List<Object> batch = keys.subList( start, Math.min( start + batchSize, keys.size() ) );
+      StringBuilder placeholders = new StringBuilder();
+      for( int i = 0; i < batch.size(); i++ )
+      {
+        placeholders.append( i == 0 ? "?" : ", ?" );
+      }
+      SQLQuery<SQLRecord> query = new SQLQuery<SQLRecord>( new SQLMetadata(), reference.getForeignTable() )
+        .where( SQLConstraint.raw( reference.getIdColumnName() + " IN ( " + placeholders + " ) ", new ArrayList<>( batch ) ) );
+      for( SQLRecord row : query )
+      {
+        List<SQLRecord> rows = rowsByKey.get( key( row.getRawValue( reference.getIdColumnName() ) ) );
+        if( rows != null )
+        {
+          rows.add( row );
+        }
+      }
+    }
+
+    for( SQLRecord record : records )
+    {
+      Object value = record.getRawValue( reference.getRefColumnName() );
+      List<SQLRecord> rows = value == null ? Collections.emptyList() : rowsByKey.get( key( value ) );
+      record.setLoadedReference( reference.getName(), reference.getReferenceQuery( record ).withResults( rows ) );
+    }
+  }
+
+  /**
+   * Normalizes integral keys so that e.g. an int foreign key matches a bigint id.
+   */
+  private static Object key( Object value )
+  {
+    if( value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte )
+    {
+      return ((Number)value).longValue();
+    }
+    return value;
+  }
+
+  /**
+   * Records read together from one query. The first time a reference is read on any of them it is loaded for all
+   * of them. The records are held weakly, so keeping one record doesn't keep its siblings (or the references
+   * loaded for them) in memory.
+   */
+  static class Batch
+  {
+    private final BatchingCursor _cursor;
+    private final List<WeakReference<SQLRecord>> _records = new ArrayList<>();
+    private final Set<String> _loaded = new HashSet<>();
+
+    Batch( BatchingCursor cursor )
+    {
+      _cursor = cursor;
+    }
+
+    void add( SQLRecord record )
+    {
+      _records.add( new WeakReference<>( record ) );
+      record.setBatch( this );
+    }
+
+    int size()
+    {
+      return _records.size();
+    }
+
+    /**
+     * @return true if the reference was loaded now, false if it had already been loaded for this batch
+     */
+    boolean load( SQLReferencePropertyInfo reference )
+    {
+      if( !_loaded.add( reference.getName() ) )
+      {
+        return false;
+      }
+      _cursor.readAhead( this );
+      List<SQLRecord> records = new ArrayList<>( _records.size() );
+      for( WeakReference<SQLRecord> ref : _records )
+      {
+        SQLRecord record = ref.get();
+        if( record != null )
+        {
+          records.add( record );
+        }
+      }
+
+      // run on the connection the cursor is still reading from rather than borrowing a second one
+      Connection conn = _cursor.getConnection();
+      if( conn == null )
+      {
+        ReferenceLoader.load( records, reference );
+        return true;
+      }
+      try
+      {
+        RagnarDB.onConnection( conn, c -> {
+          ReferenceLoader.load( records, reference );
+          return null;
+        } );
+      }
+      catch( SQLException e )
+      {
+        throw GosuExceptionUtil.forceThrow( e );
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Hands out records as they are read, putting every {@link RagnarDB#getBatchSize()} consecutive records in a
+   * {@link Batch}. Nothing is read ahead until a reference is first read on a record of the current batch, at which
+   * point the rest of the batch is read so that the reference can be loaded for all of it. Included references are
+   * loaded before a batch is handed out, so with includes every batch is read in full up front.
+   */
+  static class BatchingCursor implements SQLCursor<SQLRecord>
+  {
+    private final SQLCursor<SQLRecord> _records;
+    private final List<SQLReferencePropertyInfo> _includes;
+    private final Deque<SQLRecord> _ahead = new ArrayDeque<>();
+    private Batch _batch;
+    private boolean _closed;
+
+    BatchingCursor( SQLCursor<SQLRecord> records, List<SQLReferencePropertyInfo> includes )
+    {
+      _records = records;
+      _includes = includes;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      if( !_ahead.isEmpty() )
+      {
+        return true;
+      }
+      if( !_includes.isEmpty() && _records.hasNext() )
+      {
+        _batch = new Batch( this );
+        readAhead( _batch );
+        for( SQLReferencePropertyInfo include : _includes )
+        {
+          _batch.load( include );
+        }
+        return true;
+      }
+      return _records.hasNext();
+    }
+
+    @Override
+    public SQLRecord next()
+    {
+      if( !hasNext() )
+      {
+        throw new NoSuchElementException();
+      }
+      if( !_ahead.isEmpty() )
+      {
+        return _ahead.poll();
+      }
+      SQLRecord record = _records.next();
+      if( _batch == null || _batch.size() >= RagnarDB.getBatchSize() )
+      {
+        _batch = new Batch( this );
+      }
+      _batch.add( record );
+      return record;
+    }
+
+    /**
+     * Reads the rest of the given batch, if it is the one currently being handed out.
+     */
+    void readAhead( Batch batch )
+    {
+      if( batch != _batch || _closed )
+      {
+        return;
+      }
+      int batchSize = RagnarDB.getBatchSize();
+      while( batch.size() < batchSize && _records.hasNext() )
+      {
+        SQLRecord record = _records.next();
+        batch.add( record );
+        _ahead.add( record );
+      }
+    }
+
+    /**
+     * @return the connection results are still being read from, or null if it has been released
+     */
+    Connection getConnection()
+    {
+      if( _closed || !(_records instanceof SQLRecord.ResultSetIterator) )
+      {
+        return null;
+      }
+      return ((SQLRecord.ResultSetIterator<?>)_records).getConnection();
+    }
+
+    @Override
+    public void close()
+    {
+      _closed = true;
+      _ahead.clear();
+      _batch = null;
+      _records.close();
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package ragnardb.runtime;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * A plan for reading the rows of one result set: a typed getter per column, resolved from the result set
+ * metadata once, and for records the slot each column lands in. Reading a row makes no metadata calls.
+ */
+class RowReader
+{
+  private final String[] _columns;
+  private final ColumnReader[] _readers;
+  private ColumnLayout _layout;
+  private int[] _slots;
+
+  RowReader( ResultSetMetaData metaData ) throws SQLException
+  {
+    int columnCount = metaData.getColumnCount();
+    _columns = new String[columnCount];
+    _readers = new ColumnReader[columnCount];
+    for( int i = 0; i < columnCount; i++ )
+    {
+      _columns[i] = metaData.getColumnName( i + 1 );
+      _readers[i] = readerFor( metaData.getColumnType( i + 1 ) );
+    }
+  }
+
+  int getColumnCount()
+  {
+    return _columns.length;
+  }
+
+  /**
+   * @param column the 1-based column index
+   */
+  Object read( ResultSet resultSet, int column ) throws SQLException
+  {
+    return _readers[column - 1].read( resultSet, column );
+  }
+
+  /**
+   * Loads the current row into the given record and marks it persisted.
+   */
+  <R extends SQLRecord> R read( ResultSet resultSet, R record ) throws SQLException
+  {
+    ColumnLayout layout = record.getLayout();
+    if( layout != _layout || _slots == null )
+    {
+      resolveSlots( layout );
+    }
+    for( int i = 0; i < _columns.length; i++ )
+    {
+      Object value = _readers[i].read( resultSet, i + 1 );
+      if( _slots[i] >= 0 )
+      {
+        record.setRawValue( layout, _slots[i], _columns[i], value );
+      }
+      else
+      {
+        record.setRawValue( _columns[i], value );
+      }
+    }
+    record.markPersisted();
+    return record;
+  }
+
+  private void resolveSlots( ColumnLayout layout )
+  {
+    _layout = layout;
+    _slots = new int[_columns.length];
+    for( int i = 0; i < _columns.length; i++ )
+    {
+      _slots[i] = layout == null ? -1 : layout.slotOf( _columns[i] );
+    }
+  }
+
+  private static ColumnReader readerFor( int columnType )
+  {
+    switch( columnType )
+    {
+      case Types.INTEGER:
+        return ResultSet::getInt;
+      case Types.BIGINT:
+        return ResultSet::getLong;
+      default:
+        return ResultSet::getObject;
+    }
+  }
+
+  private interface ColumnReader
+  {
+    Object read( ResultSet resultSet, int column ) throws SQLException;
+  }
+}
@@ -0,0 +1,107 @@
+package ragnardb.runtime;
+
+import gw.lang.reflect.IPropertyInfo;
+import gw.lang.reflect.IType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compiles a query in a single pass: constraints append their sql text and bind arguments to the same
+ * builder, in the order they appear in the statement.
+ */
+class SQLBuilder
+{
+  private final ITypeToSQLMetadata _metadata;
+  private final StringBuilder _sql = new StringBuilder( 128 );
+  private final List<Object> _args = new ArrayList<>();
+
+  SQLBuilder( ITypeToSQLMetadata metadata )
+  {
+    _metadata = metadata;
+  }
+
+  SQLBuilder sql( String sql )
+  {
+    _sql.append( sql );
+    return this;
+  }
+
+  SQLBuilder sql( int i )
+  {
+    _sql.append( i );
+    return this;
+  }
+
+  SQLBuilder column( IPropertyInfo pi )
+  {
+    _sql.append( _metadata.getColumnForProperty( pi ) );
+    return this;
+  }
+
+  SQLBuilder table( IType type )
+  {
+    _sql.append( _metadata.getTableForType( type ) );
+    return this;
+  }
+
+  SQLBuilder constraint( SQLConstraint constraint )
+  {
+    constraint.compile( this );
+    return this;
+  }
+
+  /**
+   * Appends a query's compiled sql and arguments, e.g. as a subquery or one side of a set operation.
+   */
+  SQLBuilder query( SQLQuery query )
+  {
+    Compiled compiled = query.compile();
+    _sql.append( compiled.getSQL() );
+    _args.addAll( compiled.getArgs() );
+    return this;
+  }
+
+  SQLBuilder bind( Object arg )
+  {
+    _args.add( arg );
+    return this;
+  }
+
+  SQLBuilder bindAll( List<?> args )
+  {
+    _args.addAll( args );
+    return this;
+  }
+
+  Compiled build()
+  {
+    return new Compiled( _sql.toString(), _args );
+  }
+
+  /**
+   * The sql text and bind arguments of a compiled query.
+   */
+  static final class Compiled
+  {
+    private final String _sql;
+    private final List<Object> _args;
+
+    Compiled( String sql, List<Object> args )
+    {
+      _sql = sql;
+      _args = Collections.unmodifiableList( args );
+    }
+
+    String getSQL()
+    {
+      return _sql;
+    }
+
+    List<Object> getArgs()
+    {
+      return _args;
+    }
+  }
+}
@@ -41,7 +41,7 @@ public abstract class SQLConstraint
     return new OnConstraint(s);
   }
 
-  protected static SQLConstraint direction( String s, IPropertyInfo p) {
+  public static SQLConstraint direction( String s, IPropertyInfo p) {
     return new DirectionConstraint(s,p);
   }
 
@@ -57,6 +57,44 @@ public abstract class SQLConstraint
     return new OrderByConstraint(constraints);
   }
 
+  /**
+   * A keyset predicate selecting the rows that sort after the given ordering values under the given ORDER BY,
+   * e.g. ( a , b ) > ( ? , ? ). The ordering columns should be non null and together unique.
+   */
+  static SQLConstraint seekAfter( SQLConstraint orderBy, List<Object> values ) {
+    DirectionConstraint[] order = orderingOf( orderBy );
+    if( order.length != values.size() ) {
+      throw new IllegalArgumentException( "Expected " + order.length + " ordering values but got " + values.size() );
+    }
+    return new KeysetConstraint( order, values );
+  }
+
+  /**
+   * @return the properties of the given ORDER BY, in order
+   */
+  static List<IPropertyInfo> orderingProperties( SQLConstraint orderBy ) {
+    List<IPropertyInfo> properties = new ArrayList<>();
+    for( DirectionConstraint direction : orderingOf( orderBy ) ) {
+      properties.add( direction.prop );
+    }
+    return properties;
+  }
+
+  private static DirectionConstraint[] orderingOf( SQLConstraint orderBy ) {
+    if( !(orderBy instanceof OrderByConstraint) ) {
+      throw new IllegalStateException( "Seeking requires an orderBy" );
+    }
+    SQLConstraint[] constraints = ((OrderByConstraint)orderBy).constraints;
+    DirectionConstraint[] order = new DirectionConstraint[constraints.length];
+    for( int i = 0; i < constraints.length; i++ ) {
+      if( !(constraints[i] instanceof DirectionConstraint) ) {
+        throw new IllegalStateException( "Seeking requires ordering by properties" );
+      }
+      order[i] = (DirectionConstraint)constraints[i];
+    }
+    return order;
+  }
+
   public static SQLConstraint raw( String sql, List<Object> args) {
     return new RawConstraint(sql,args);
   }
@@ -71,9 +109,10 @@ public abstract class SQLConstraint
 
 
 
-  abstract String getSQL( ITypeToSQLMetadata metadata );
-
-  abstract List<Object> getArgs();
+  /**
+   * Appends this constraint's sql and bind arguments to the builder.
+   */
+  abstract void compile( SQLBuilder builder );
 
   public SQLConstraint addOn(SQLConstraint sql){
     return new CombinedConstraint( this, sql);
@@ -106,17 +145,9 @@ public abstract class SQLConstraint
     }
 
 
-    public String getSQL( ITypeToSQLMetadata metadata  )
+    void compile( SQLBuilder builder )
     {
-      return c1.getSQL(metadata) + " " + c2.getSQL(metadata);
-    }
-
-    List<Object> getArgs()
-    {
-      List answer = new ArrayList();
-      answer.addAll(c1.getArgs());
-      answer.addAll(c2.getArgs());
-      return answer;
+      builder.constraint( c1 ).sql( " " ).constraint( c2 );
     }
   }
 
@@ -132,14 +163,9 @@ public abstract class SQLConstraint
     }
 
 
-    public String getSQL( ITypeToSQLMetadata metadata )
-    {
-      return metadata.getColumnForProperty(prop) + " " + direction;
-    }
-
-    List<Object> getArgs()
+    void compile( SQLBuilder builder )
     {
-      return new ArrayList<>();
+      builder.column( prop ).sql( " " ).sql( direction );
     }
   }
 
@@ -157,21 +183,15 @@ public abstract class SQLConstraint
     }
 
 
-    public String getSQL( ITypeToSQLMetadata metadata  )
-    {
-      return prepend + constraint.getSQL(metadata) + append;
-    }
-
-    List<Object> getArgs()
+    void compile( SQLBuilder builder )
     {
-      return constraint.getArgs();
+      builder.sql( prepend ).constraint( constraint ).sql( append );
     }
   }
 
   private static class OrderByConstraint extends SQLConstraint
   {
     SQLConstraint[] constraints;
-    SQLConstraint constraint1;
 
 
     OrderByConstraint( SQLConstraint ... _constraints  )
@@ -180,35 +200,87 @@ public abstract class SQLConstraint
     }
 
 
-    public String getSQL( ITypeToSQLMetadata metadata  )
+    void compile( SQLBuilder builder )
     {
-      boolean isFirstTime = true;
-      String ans = "ORDER BY ";
-      for(SQLConstraint cons : constraints){
-        if(isFirstTime){
-          ans += cons.getSQL(metadata);
-          isFirstTime = false;
-        }
-        else{
-          ans += " , " + cons.getSQL(metadata);
+      builder.sql( "ORDER BY " );
+      for( int i = 0; i < constraints.length; i++ )
+      {
+        if( i > 0 )
+        {
+          builder.sql( " , " );
         }
+        builder.constraint( constraints[i] );
       }
-      return  ans;
     }
+  }
+
+
+
+
+
+  private static class KeysetConstraint extends SQLConstraint
+  {
+    DirectionConstraint[] order;
+    List<Object> values;
+
 
-    List<Object> getArgs()
+    KeysetConstraint( DirectionConstraint[] _order, List<Object> _values )
     {
-      List answer = new ArrayList();
-      for(SQLConstraint cons : constraints){
-        answer.addAll(cons.getArgs());
-      }
-      return answer;
+      order = _order;
+      values = _values;
     }
-  }
-
 
+    void compile( SQLBuilder builder )
+    {
+      if( isUniform() )
+      {
+        // a row value comparison, which the database can answer with a single index range scan
+        builder.sql( " ( " );
+        for( int i = 0; i < order.length; i++ )
+        {
+          builder.sql( i == 0 ? "" : " , " ).column( order[i].prop );
+        }
+        builder.sql( " ) " ).sql( comparator( order[0] ) ).sql( " ( " );
+        for( int i = 0; i < order.length; i++ )
+        {
+          builder.sql( i == 0 ? "?" : " , ?" );
+        }
+        builder.sql( " ) " ).bindAll( values );
+      }
+      else
+      {
+        // mixed directions: ( a > ? OR ( a = ? AND b < ? ) OR ... )
+        builder.sql( " ( " );
+        for( int i = 0; i < order.length; i++ )
+        {
+          builder.sql( i == 0 ? "( " : " OR ( " );
+          for( int j = 0; j < i; j++ )
+          {
+            builder.column( order[j].prop ).sql( " = ? AND " ).bind( values.get( j ) );
+          }
+          builder.column( order[i].prop ).sql( " " ).sql( comparator( order[i] ) ).sql( " ? )" ).bind( values.get( i ) );
+        }
+        builder.sql( " ) " );
+      }
+    }
 
+    private boolean isUniform()
+    {
+      for( DirectionConstraint direction : order )
+      {
+        if( !comparator( direction ).equals( comparator( order[0] ) ) )
+        {
+          return false;
+        }
+      }
+      return true;
+    }
 
+    private static String comparator( DirectionConstraint direction )
+    {
+      return "desc".equalsIgnoreCase( direction.direction ) ? "<" : ">";
+    }
+  }
 
   private static class JoinConstraint extends SQLConstraint
   {
@@ -222,15 +294,9 @@ public abstract class SQLConstraint
     }
 
 
-    public String getSQL( ITypeToSQLMetadata metadata  )
-    {
-      return " " + _joinType + " ( " + _obj
-         + " ) ";
-    }
-
-    List<Object> getArgs()
+    void compile( SQLBuilder builder )
     {
-      return Collections.emptyList();
+      builder.sql( " " ).sql( _joinType ).sql( " ( " ).sql( _obj ).sql( " ) " );
     }
   }
 
@@ -239,7 +305,6 @@ public abstract class SQLConstraint
 
     SQLConstraint constraint1;
     SQLConstraint constraint2;
-    String result;
 
     AndConstraint( IPropertyInfo pi, SQLConstraint _constraint1, SQLConstraint _constraint2 )
     {
@@ -248,17 +313,9 @@ public abstract class SQLConstraint
       constraint2 = _constraint2;
     }
 
-    public String getSQL( ITypeToSQLMetadata metadata ){
-      result = " ( " +   constraint1.getSQL(metadata)  + " AND " +  constraint2.getSQL(metadata) + " ) ";
-      return result;
-    }
-
-    List<Object> getArgs()
+    void compile( SQLBuilder builder )
     {
-      List answer = new ArrayList();
-      answer.addAll(constraint1.getArgs());
-      answer.addAll(constraint2.getArgs());
-      return answer;
+      builder.sql( " ( " ).constraint( constraint1 ).sql( " AND " ).constraint( constraint2 ).sql( " ) " );
     }
   }
 
@@ -273,14 +330,9 @@ public abstract class SQLConstraint
       constraint1 = _constraint1;
     }
 
-    public String getSQL( ITypeToSQLMetadata metadata ){
-
-      return " ON " + constraint1.getSQL( metadata);
-    }
-
-    List<Object> getArgs()
+    void compile( SQLBuilder builder )
     {
-      return constraint1.getArgs();
+      builder.sql( " ON " ).constraint( constraint1 );
     }
   }
 
@@ -298,14 +350,9 @@ public abstract class SQLConstraint
       _args = args;
     }
 
-    public String getSQL( ITypeToSQLMetadata metadata ){
-
-      return _sql;
-    }
-
-    List<Object> getArgs()
+    void compile( SQLBuilder builder )
     {
-      return _args;
+      builder.sql( _sql ).bindAll( _args );
     }
   }
 
@@ -320,14 +367,9 @@ public abstract class SQLConstraint
       limit = _limit;
     }
 
-    public String getSQL( ITypeToSQLMetadata metadata ){
-
-      return new StringBuilder().append(" LIMIT ").append(limit).append(" ").toString();
-    }
-
-    List<Object> getArgs()
+    void compile( SQLBuilder builder )
     {
-      return new ArrayList<>();
+      builder.sql( " LIMIT " ).sql( limit ).sql( " " );
     }
   }
 
@@ -342,13 +384,9 @@ public abstract class SQLConstraint
       limit = _limit;
     }
 
-    public String getSQL( ITypeToSQLMetadata metadata ){
-      return new StringBuilder().append(" OFFSET ").append(limit).append(" ").toString();
-    }
-
-    List<Object> getArgs()
+    void compile( SQLBuilder builder )
     {
-      return new ArrayList<>();
+      builder.sql( " OFFSET " ).sql( limit ).sql( " " );
     }
   }
 
@@ -357,7 +395,6 @@ public abstract class SQLConstraint
 
     SQLConstraint constraint1;
     SQLConstraint constraint2;
-    String result;
 
     OrConstraint( IPropertyInfo pi, SQLConstraint _constraint1, SQLConstraint _constraint2 )
     {
@@ -366,17 +403,9 @@ public abstract class SQLConstraint
       constraint2 = _constraint2;
     }
 
-    public String getSQL( ITypeToSQLMetadata metadata ){
-      result = " ( " +   constraint1.getSQL(metadata)  + " OR " +  constraint2.getSQL(metadata) + " ) ";
-      return result;
-    }
-
-    List<Object> getArgs()
+    void compile( SQLBuilder builder )
     {
-      List answer = new ArrayList();
-      answer.addAll(constraint1.getArgs());
-      answer.addAll(constraint2.getArgs());
-      return answer;
+      builder.sql( " ( " ).constraint( constraint1 ).sql( " OR " ).constraint( constraint2 ).sql( " ) " );
     }
   }
 
@@ -392,14 +421,9 @@ public abstract class SQLConstraint
       _original = original;
     }
 
-    public String getSQL( ITypeToSQLMetadata metadata )
+    void compile( SQLBuilder builder )
     {
-      return " NOT " + _original.getSQL(metadata);
-    }
-
-    List<Object> getArgs()
-    {
-      return _original.getArgs();
+      builder.sql( " NOT " ).constraint( _original );
     }
   }
 
@@ -416,22 +440,17 @@ public abstract class SQLConstraint
       if( o instanceof PropertyReference){
         IFeatureInfo info = ((PropertyReference) o).getFeatureInfo();
         RHS = ((ISQLTableType) info.getOwnersType()).getTable().getTableName()+"."+info.getDisplayName();
-        _objs = new ArrayList<>();
+        _objs = Collections.emptyList();
       }
       else {
-        _objs = Arrays.asList( o );
+        _objs = Collections.singletonList( o );
         RHS = " ? ";
       }
     }
 
-    public String getSQL( ITypeToSQLMetadata metadata )
-    {
-      return metadata.getColumnForProperty(_propertyInfo) + _comparator + RHS;
-    }
-
-    List<Object> getArgs()
+    void compile( SQLBuilder builder )
     {
-      return _objs;
+      builder.column( _propertyInfo ).sql( _comparator ).sql( RHS ).bindAll( _objs );
     }
   }
 
@@ -449,36 +468,25 @@ public abstract class SQLConstraint
     IsInConstraint( IPropertyInfo pi, SQLQuery query )
     {
       _propertyInfo = pi;
-      _list = query.getArgs();
       _query = query;
-
     }
 
-    public String getSQL( ITypeToSQLMetadata metadata )
+    void compile( SQLBuilder builder )
     {
-      if(_query!=null){
-        return  metadata.getColumnForProperty(_propertyInfo)
-        + " IN (" + _query.getSQLString() + ") ";
+      builder.column( _propertyInfo ).sql( " IN (" );
+      if( _query != null )
+      {
+        builder.query( _query ).sql( ") " );
       }
-      else {
-        String ans = "";
-        ans += metadata.getColumnForProperty(_propertyInfo);
-        ans += " IN (";
-        if (_list.size() != 0) {
-          for (int x = 0; x < _list.size() - 1; x++) {
-            ans += " ? ,";
-          }
-          ans += " ? ";
+      else
+      {
+        for( int i = 0; i < _list.size(); i++ )
+        {
+          builder.sql( i == 0 ? " ? " : ", ? " );
         }
-        ans += " ) ";
-        return ans;
+        builder.sql( " ) " ).bindAll( _list );
       }
     }
-
-    List<Object> getArgs()
-    {
-      return _list;
-    }
   }
 
   private static class IsLikeConstraint extends SQLConstraint
@@ -491,14 +499,9 @@ public abstract class SQLConstraint
       _str = str;
     }
 
-    public String getSQL( ITypeToSQLMetadata metadata )
-    {
-      return (metadata.getColumnForProperty(_propertyInfo) + " LIKE ?");
-    }
-
-    List<Object> getArgs()
+    void compile( SQLBuilder builder )
     {
-      return Arrays.asList( _str );
+      builder.column( _propertyInfo ).sql( " LIKE ?" ).bind( _str );
     }
   }
 }
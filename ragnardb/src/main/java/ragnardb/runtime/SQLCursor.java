@@ -0,0 +1,40 @@
+package ragnardb.runtime;
+
+import java.util.Iterator;
+
+/**
+ * An iterator over the results of a query that holds its statement, result set and (when pooled) connection
+ * open until it is exhausted or closed. Close it, e.g. with try-with-resources, when stopping early.
+ */
+public interface SQLCursor<T> extends Iterator<T>, AutoCloseable
+{
+  @Override
+  void close();
+
+  /**
+   * Adapts results that have already been read into memory.
+   */
+  static <T> SQLCursor<T> of( Iterator<T> results )
+  {
+    return new SQLCursor<T>()
+    {
+      @Override
+      public void close()
+      {
+        // nothing held open
+      }
+
+      @Override
+      public boolean hasNext()
+      {
+        return results.hasNext();
+      }
+
+      @Override
+      public T next()
+      {
+        return results.next();
+      }
+    };
+  }
+}
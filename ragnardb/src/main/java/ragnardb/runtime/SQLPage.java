@@ -0,0 +1,38 @@
+package ragnardb.runtime;
+
+import java.util.List;
+
+/**
+ * One page of a keyset paginated query, see {@link SQLQuery#page(int)}. Along with its results a page carries
+ * the ordering values of its last result, the cursor from which the next page is read.
+ */
+public final class SQLPage<T>
+{
+  private final List<T> _results;
+  private final List<Object> _nextCursor;
+
+  SQLPage( List<T> results, List<Object> nextCursor )
+  {
+    _results = results;
+    _nextCursor = nextCursor;
+  }
+
+  public List<T> getResults()
+  {
+    return _results;
+  }
+
+  /**
+   * @return the ordering values to pass to {@link SQLQuery#seekAfter(Object...)} for the next page, or null if
+   * this is the last page
+   */
+  public List<Object> getNextCursor()
+  {
+    return _nextCursor;
+  }
+
+  public boolean hasNext()
+  {
+    return _nextCursor != null;
+  }
+}
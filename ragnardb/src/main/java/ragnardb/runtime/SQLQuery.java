@@ -9,11 +9,14 @@ import gw.util.GosuExceptionUtil;
 import ragnardb.RagnarDB;
 import ragnardb.parser.ast.SQL;
 import ragnardb.plugin.SQLColumnPropertyInfo;
+import ragnardb.plugin.SQLReferencePropertyInfo;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created by carson on 7/1/15.
@@ -31,13 +34,18 @@ public class SQLQuery<T> implements Iterable<T> {
   private SQLConstraint _limitExpr;
   private SQLConstraint _offsetExpr;
   private PropertyReference _pick;
+  private int _fetchSize;
+  private List<SQLReferencePropertyInfo> _includes = Collections.emptyList();
+  private SQLBuilder.Compiled _compiled;
 
   private void setManualSelect(String manualSelect){
     _manualSelect = manualSelect;
+    _compiled = null;
   }
 
   protected void setGroupBy(String str){
     _groupBy = str;
+    _compiled = null;
   }
 
   protected void setType(IType type){
@@ -138,6 +146,91 @@ public class SQLQuery<T> implements Iterable<T> {
     return newQuery;
   }
 
+  /**
+   * Restricts this query to the rows that sort after the given values of its orderBy properties, for keyset
+   * pagination: unlike an offset, the database seeks straight to the first row of the page instead of reading
+   * and discarding the rows before it. The ordering properties should be non null and together unique, e.g.
+   * end with the id.
+   */
+  public SQLQuery<T> seekAfter(Object... orderingValues){
+    return where(SQLConstraint.seekAfter(_orderByExpr, Arrays.asList(orderingValues)));
+  }
+
+  /**
+   * Restricts this query to the rows that sort after the given result of it, see {@link #seekAfter(Object...)}.
+   */
+  public SQLQuery<T> pageAfter(T lastRecord){
+    return where(SQLConstraint.seekAfter(_orderByExpr, orderingValues(lastRecord)));
+  }
+
+  /**
+   * Reads the first page of at most pageSize results of this query. Pass the page's next cursor to
+   * {@link #seekAfter(Object...)} to read the page after it.
+   */
+  public SQLPage<T> page(int pageSize){
+    if(pageSize < 1){
+      throw new IllegalArgumentException("Page size must be at least 1: " + pageSize);
+    }
+    List<T> results = new ArrayList<>(pageSize + 1);
+    // one row more than the page tells whether there is a next page without reading an empty one
+    try(SQLCursor<T> cursor = open(pageSize + 1)){
+      while(cursor.hasNext()){
+        results.add(cursor.next());
+      }
+    }
+    if(results.size() <= pageSize){
+      return new SQLPage<>(results, null);
+    }
+    results.remove(pageSize);
+    return new SQLPage<>(results, orderingValues(results.get(pageSize - 1)));
+  }
+
+  /**
+   * Reads the results of this query a page at a time, seeking each page after the last result of the one before.
+   */
+  public Iterable<SQLPage<T>> pages(int pageSize){
+    return () -> new Iterator<SQLPage<T>>() {
+      private SQLPage<T> _next = page(pageSize);
+
+      public boolean hasNext(){
+        return _next != null;
+      }
+
+      public SQLPage<T> next(){
+        if(_next == null){
+          throw new NoSuchElementException();
+        }
+        SQLPage<T> page = _next;
+        _next = page.hasNext() ? seekAfter(page.getNextCursor().toArray()).page(pageSize) : null;
+        return page;
+      }
+    };
+  }
+
+  /**
+   * Sets how many rows are fetched from the database per round trip while iterating this query's results.
+   * A hint to the driver; 0 (the default) leaves it up to the driver.
+   */
+  public SQLQuery<T> fetchSize(int rows){
+    SQLQuery<T> newQuery = cloneMe();
+    newQuery._fetchSize = rows;
+    return newQuery;
+  }
+
+  /**
+   * Loads the given foreign key reference for all results up front: one IN query per batch of results rather
+   * than one query per result when the reference is read.
+   */
+  public SQLQuery<T> include(PropertyReference<Object, ?> ref){
+    if(!(ref.getPropertyInfo() instanceof SQLReferencePropertyInfo)){
+      throw new IllegalArgumentException(ref.getPropertyInfo().getName() + " is not a foreign key reference");
+    }
+    SQLQuery<T> newQuery = cloneMe();
+    newQuery._includes = new ArrayList<>(_includes);
+    newQuery._includes.add((SQLReferencePropertyInfo)ref.getPropertyInfo());
+    return newQuery;
+  }
+
   public SQLQuery<T> union( SQLQuery query) {
     return new SetOpQuery(this, query, " UNION " , _metadata , _rootType);
   }
@@ -157,12 +250,77 @@ public class SQLQuery<T> implements Iterable<T> {
 
 
 
-  public boolean delete() throws SQLException
+  /**
+   * Deletes the rows matching this query with a single DELETE statement.
+   *
+   * @return the number of rows deleted
+   */
+  public int delete() throws SQLException
+  {
+    SQLBuilder builder = new SQLBuilder( _metadata ).sql( "DELETE FROM " ).table( _rootType ).sql( " " );
+    return executeUpdate( appendWhere( builder ) );
+  }
+
+  /**
+   * Starts a set based update of the rows matching this query, compiled to a single UPDATE statement rather
+   * than reading and saving each record.
+   */
+  public <V> SQLUpdate<T> set( PropertyReference<Object, V> ref, V value )
   {
-    String from = "DELETE FROM " + _metadata.getTableForType(_rootType);
-    String where = _whereExpr == null ? "" : "WHERE " + _whereExpr.getSQL( _metadata );
-    PreparedStatement delete = RagnarDB.prepareStatement(from + " " + where, getArgs());
-    return delete.execute();
+    return new SQLUpdate<T>( this ).set( ref, value );
+  }
+
+  /**
+   * Sets the given properties on the rows matching this query with a single UPDATE statement.
+   *
+   * @return the number of rows updated
+   */
+  public int update( Map<? extends PropertyReference, ?> values ) throws SQLException
+  {
+    Map<IPropertyInfo, Object> columns = new LinkedHashMap<>();
+    for( Map.Entry<? extends PropertyReference, ?> entry : values.entrySet() )
+    {
+      columns.put( entry.getKey().getPropertyInfo(), entry.getValue() );
+    }
+    return updateColumns( columns );
+  }
+
+  int updateColumns( Map<IPropertyInfo, Object> values ) throws SQLException
+  {
+    if( values.isEmpty() )
+    {
+      return 0;
+    }
+    SQLBuilder builder = new SQLBuilder( _metadata ).sql( "UPDATE " ).table( _rootType ).sql( " SET " );
+    String separator = "";
+    for( Map.Entry<IPropertyInfo, Object> entry : values.entrySet() )
+    {
+      builder.sql( separator ).column( entry.getKey() ).sql( " = ?" ).bind( entry.getValue() );
+      separator = ", ";
+    }
+    return executeUpdate( appendWhere( builder.sql( " " ) ) );
+  }
+
+  private SQLBuilder appendWhere( SQLBuilder builder )
+  {
+    if( _joinExpr != null || _manualSelect != null || _pick != null || _groupBy != null )
+    {
+      throw new IllegalStateException( "Only a plain query on one table can be updated or deleted: " + getSQLString() );
+    }
+    if( _whereExpr != null )
+    {
+      builder.sql( "WHERE " ).constraint( _whereExpr );
+    }
+    return builder;
+  }
+
+  private static int executeUpdate( SQLBuilder builder ) throws SQLException
+  {
+    SQLBuilder.Compiled compiled = builder.build();
+    try( PreparedStatement statement = RagnarDB.prepareStatement( compiled.getSQL(), compiled.getArgs() ) )
+    {
+      return statement.executeUpdate();
+    }
   }
 
   public <U> SQLQuery<U> pick( PropertyReference<Object, U> ref)
@@ -305,32 +463,169 @@ public class SQLQuery<T> implements Iterable<T> {
 
   public Iterator<T> iterator()
   {
-    Iterator<T> result;
+    return cursor();
+  }
+
+  /**
+   * Opens the results of this query. The cursor holds a statement and connection until it has been read to the
+   * end or closed, so close it when stopping early.
+   */
+  public SQLCursor<T> cursor()
+  {
+    return open( 0 );
+  }
+
+  /**
+   * Streams the results of this query, reading rows as they are consumed. Closing the stream closes the
+   * underlying cursor, so use try-with-resources unless the stream is always consumed to the end.
+   */
+  public Stream<T> stream()
+  {
+    SQLCursor<T> cursor = cursor();
+    return StreamSupport.stream( Spliterators.spliteratorUnknownSize( cursor, Spliterator.ORDERED ), false )
+      .onClose( cursor::close );
+  }
+
+  /**
+   * @return the first result of this query, or null if there are none. Fetches at most one row.
+   */
+  public T first()
+  {
+    try( SQLCursor<T> results = open( 1 ) )
+    {
+      return results.hasNext() ? results.next() : null;
+    }
+  }
+
+  /**
+   * @return true if this query has any results. Fetches at most one row.
+   */
+  public boolean exists()
+  {
+    try( SQLCursor<T> results = open( 1 ) )
+    {
+      return results.hasNext();
+    }
+  }
+
+  /**
+   * @return the only result of this query, or null if there are none. Fetches at most two rows.
+   * @throws IllegalStateException if there is more than one result
+   */
+  public T single()
+  {
+    try( SQLCursor<T> results = open( 2 ) )
+    {
+      if( !results.hasNext() )
+      {
+        return null;
+      }
+      T result = results.next();
+      if( results.hasNext() )
+      {
+        throw new IllegalStateException( "Expected at most one result for " + getSQLString() );
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Runs this query.
+   *
+   * @param maxRows the most rows the caller will read, or 0 for all of them
+   */
+  protected SQLCursor<T> open( int maxRows )
+  {
+    SQLBuilder.Compiled compiled = maxRows > 0 ? compileLimited( maxRows ) : compile();
     try
     {
       if( (_pick != null) || (_manualSelect != null) ) {
-        result = SQLRecord.selectSingleColumn( getSQLString(), getArgs() );
+        return SQLRecord.selectSingleColumn( compiled.getSQL(), compiled.getArgs(), _fetchSize );
+      } else if( _includes.isEmpty() && !ReferenceLoader.hasReferences( _rootType ) ) {
+        return SQLRecord.select( compiled.getSQL(), compiled.getArgs(), _rootType, _fetchSize );
       } else {
-        result = SQLRecord.select( getSQLString(), getArgs(), _rootType );
+        SQLCursor<SQLRecord> records = SQLRecord.select( compiled.getSQL(), compiled.getArgs(), _rootType, _fetchSize );
+        return (SQLCursor<T>)new ReferenceLoader.BatchingCursor( records, _includes );
       }
     }
     catch( SQLException e )
     {
       throw GosuExceptionUtil.forceThrow( e );
     }
-    return result;
+  }
+
+  /**
+   * Compiles this query restricted to at most the given number of rows. A query that already has a limit or
+   * offset is wrapped in a subquery so that its own limit still applies first.
+   */
+  private SQLBuilder.Compiled compileLimited( int limit )
+  {
+    SQLBuilder builder = new SQLBuilder( _metadata );
+    if( _limitExpr == null && _offsetExpr == null )
+    {
+      builder.query( this );
+    }
+    else
+    {
+      builder.sql( "SELECT * FROM ( " ).query( this ).sql( " ) " );
+    }
+    return builder.constraint( SQLConstraint.limit( limit ) ).build();
   }
 
   public String  getSQLString() {
-    String select =  "SELECT " + getSelect();
-    String from = "FROM " + _metadata.getTableForType(_rootType);
-    String join = _joinExpr == null ? "" : _joinExpr.getSQL( _metadata);
-    String where = _whereExpr == null ? "" : "WHERE " + _whereExpr.getSQL( _metadata );
-    String groupBy = _groupBy == null ? "" : _groupBy;
-    String orderBy =  _orderByExpr == null ? "" :  _orderByExpr.getSQL(_metadata);
-    String limit =  _limitExpr == null ? "" :  _limitExpr.getSQL(_metadata);
-    String offset =  _offsetExpr == null ? "" :  _offsetExpr.getSQL(_metadata);
-    return select + " " +  from + " "  + join + " " + " " + where + " " + groupBy + " " + orderBy + " " + limit + " " + offset;
+    return compile().getSQL();
+  }
+
+  public List<Object> getArgs()
+  {
+    return compile().getArgs();
+  }
+
+  /**
+   * Renders the sql and bind arguments of this query in a single pass. A query is not modified once it has
+   * been handed out (every builder method returns a clone), so the result is computed once per instance.
+   */
+  SQLBuilder.Compiled compile()
+  {
+    SQLBuilder.Compiled compiled = _compiled;
+    if( compiled == null )
+    {
+      SQLBuilder builder = new SQLBuilder( _metadata );
+      compileInto( builder );
+      _compiled = compiled = builder.build();
+    }
+    return compiled;
+  }
+
+  void compileInto( SQLBuilder builder )
+  {
+    builder.sql( "SELECT " );
+    appendSelect( builder );
+    builder.sql( " FROM " ).table( _rootType ).sql( " " );
+    if( _joinExpr != null )
+    {
+      builder.constraint( _joinExpr );
+    }
+    if( _whereExpr != null )
+    {
+      builder.sql( " WHERE " ).constraint( _whereExpr );
+    }
+    if( _groupBy != null )
+    {
+      builder.sql( " " ).sql( _groupBy );
+    }
+    if( _orderByExpr != null )
+    {
+      builder.sql( " " ).constraint( _orderByExpr );
+    }
+    if( _limitExpr != null )
+    {
+      builder.constraint( _limitExpr );
+    }
+    if( _offsetExpr != null )
+    {
+      builder.constraint( _offsetExpr );
+    }
   }
 
 
@@ -357,52 +652,74 @@ public class SQLQuery<T> implements Iterable<T> {
     }
 
     @Override
-    public String getSQLString()
+    void compileInto( SQLBuilder builder )
     {
-      return query1.getSQLString() + opString + query2.getSQLString();
+      builder.query( query1 ).sql( opString ).query( query2 );
     }
+  }
 
-    @Override
-    public List<Object> getArgs()
+  private static class LoadedQuery<T> extends SQLQuery<T>
+  {
+    private final List<T> _results;
+
+    LoadedQuery( ITypeToSQLMetadata metadata, IType rootType, List<T> results )
     {
-      List ans = new ArrayList<>();
-      ans.addAll(query1.getArgs());
-      ans.addAll(query2.getArgs());
-      return ans;
+      super( metadata, rootType );
+      _results = results;
+    }
 
+    @Override
+    protected SQLCursor<T> open( int maxRows )
+    {
+      return SQLCursor.of( _results.iterator() );
     }
   }
 
-  private String getSelect()
+  private void appendSelect( SQLBuilder builder )
   {
     if( _pick != null )
     {
-      return ((SQLColumnPropertyInfo)_pick.getPropertyInfo()).getColumnName();
+      builder.sql( ((SQLColumnPropertyInfo)_pick.getPropertyInfo()).getColumnName() );
     }
     else if ( _manualSelect != null){
-      return _manualSelect;
+      builder.sql( _manualSelect );
     }
     else
     {
-      return _metadata.getTableForType( _rootType ) + ".* ";
+      builder.table( _rootType ).sql( ".* " );
     }
   }
 
-  public List<Object> getArgs()
+  private List<Object> orderingValues( T result )
   {
-    List answer = new ArrayList();
-    if(_joinExpr!=null) {
-      answer.addAll(_joinExpr.getArgs());
+    if( !(result instanceof SQLRecord) )
+    {
+      throw new IllegalStateException( "Only record results can be paged after" );
     }
-    if(_whereExpr!=null) {
-      answer.addAll(_whereExpr.getArgs());
+    List<Object> values = new ArrayList<>();
+    for( IPropertyInfo property : SQLConstraint.orderingProperties( _orderByExpr ) )
+    {
+      values.add( ((SQLRecord)result).getRawValue( _metadata.getColumnForProperty( property ) ) );
     }
-    return answer;
+    return values;
   }
 
   private SQLQuery<T> cloneMe()
   {
-    SQLQuery<T> child = new SQLQuery<T>( _metadata, _rootType );
+    return copyInto( new SQLQuery<T>( _metadata, _rootType ) );
+  }
+
+  /**
+   * @return a copy of this query that serves the given, already loaded, results instead of querying the
+   * database again. Refining the copy (e.g. with where()) produces a normal query.
+   */
+  SQLQuery<T> withResults( List<T> results )
+  {
+    return copyInto( new LoadedQuery<T>( _metadata, _rootType, results ) );
+  }
+
+  private SQLQuery<T> copyInto( SQLQuery<T> child )
+  {
     child._metadata = this._metadata;
     child._rootType = this._rootType;
     child._whereExpr = this._whereExpr;
@@ -413,6 +730,8 @@ public class SQLQuery<T> implements Iterable<T> {
     child._limitExpr = this._limitExpr;
     child._offsetExpr = this._offsetExpr;
     child._manualSelect = this._manualSelect;
+    child._fetchSize = this._fetchSize;
+    child._includes = this._includes;
     return child;
   }
 
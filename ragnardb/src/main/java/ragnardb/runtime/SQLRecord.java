@@ -1,27 +1,52 @@
 package ragnardb.runtime;
 
+import gw.lang.reflect.IConstructorHandler;
 import gw.lang.reflect.IType;
+import gw.lang.reflect.ITypeInfo;
 import gw.util.GosuExceptionUtil;
+import ragnardb.QueryMetrics;
 import ragnardb.RagnarDB;
 import ragnardb.api.IModelConfig;
 import ragnardb.api.ISQLResult;
+import ragnardb.plugin.SQLReferencePropertyInfo;
+import ragnardb.plugin.SQLTableTypeInfo;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
-import java.sql.Types;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 public class SQLRecord implements ISQLResult
 {
-  private ValMap _values = new ValMap();
+  /**
+   * Database urls whose driver reports only the last generated key of a batch rather than one per row
+   */
+  private static final Set<String> NO_BATCH_KEYS = ConcurrentHashMap.newKeySet();
+
+  private ColumnLayout _layout;
+  private Object[] _slots;
+  private BitSet _assigned;
+  private BitSet _dirtySlots;
+  private ValMap _values;
+  private Set<String> _dirty;
+  private Map<String, Object> _loadedReferences;
+  private ReferenceLoader.Batch _batch;
   private boolean _persisted;
   protected IModelConfig _config;
 
@@ -32,6 +57,7 @@ public class SQLRecord implements ISQLResult
 
   public SQLRecord(IModelConfig config) {
     _config = config;
+    useLayout( config.getColumnLayout() );
   }
 
   public SQLRecord() {/* dummy */}
@@ -39,13 +65,238 @@ public class SQLRecord implements ISQLResult
   @Override
   public Object getRawValue( String property )
   {
-    return _values.get( property );
+    int slot = _layout == null ? -1 : _layout.slotOf( property );
+    if( slot >= 0 )
+    {
+      return _slots[slot];
+    }
+    return _values == null ? null : _values.get( property );
+  }
+
+  ColumnLayout getLayout()
+  {
+    return _layout;
+  }
+
+  /**
+   * Reads a column through a slot resolved ahead of time against the given layout, falling back to a
+   * lookup by name if this record doesn't use that layout.
+   */
+  public Object getRawValue( ColumnLayout layout, int slot, String column )
+  {
+    return layout == _layout && layout != null ? _slots[slot] : getRawValue( column );
   }
 
   @Override
   public void setRawValue( String property, Object value )
   {
-    _values.put( property, value );
+    int slot = _layout == null ? -1 : _layout.slotOf( property );
+    if( slot >= 0 )
+    {
+      setSlot( slot, value );
+      return;
+    }
+
+    String column = property.toLowerCase();
+    if( _values == null )
+    {
+      _values = new ValMap();
+      _dirty = new TreeSet<>();
+    }
+    boolean assigned = _values.containsKey( column );
+    if( !Objects.equals( _values.put( column, value ), value ) || !assigned )
+    {
+      _dirty.add( column );
+      _loadedReferences = null;
+    }
+  }
+
+  /**
+   * Writes a column through a slot resolved ahead of time against the given layout, falling back to a
+   * lookup by name if this record doesn't use that layout.
+   */
+  public void setRawValue( ColumnLayout layout, int slot, String column, Object value )
+  {
+    if( layout == _layout && layout != null )
+    {
+      setSlot( slot, value );
+    }
+    else
+    {
+      setRawValue( column, value );
+    }
+  }
+
+  private void setSlot( int slot, Object value )
+  {
+    if( !_assigned.get( slot ) || !Objects.equals( _slots[slot], value ) )
+    {
+      _dirtySlots.set( slot );
+      _loadedReferences = null;
+    }
+    _slots[slot] = value;
+    _assigned.set( slot );
+  }
+
+  /**
+   * @return the value loaded ahead of time for the given reference property, or null if it hasn't been loaded.
+   * Loaded references are dropped whenever a column of this record changes.
+   */
+  public Object getLoadedReference( String property )
+  {
+    return _loadedReferences == null ? null : _loadedReferences.get( property );
+  }
+
+  public void setLoadedReference( String property, Object value )
+  {
+    if( _loadedReferences == null )
+    {
+      _loadedReferences = new HashMap<>( 4 );
+    }
+    _loadedReferences.put( property, value );
+  }
+
+  void setBatch( ReferenceLoader.Batch batch )
+  {
+    _batch = batch;
+  }
+
+  /**
+   * Reads a foreign key reference of this record. If this record was read along with others and the reference
+   * hasn't been loaded for them yet, it is loaded for all of them with one query.
+   */
+  public Object getReference( SQLReferencePropertyInfo reference )
+  {
+    Object loaded = getLoadedReference( reference.getName() );
+    if( loaded == null && _batch != null && _batch.load( reference ) )
+    {
+      loaded = getLoadedReference( reference.getName() );
+    }
+    return loaded != null ? loaded : reference.getReferenceQuery( this );
+  }
+
+  /**
+   * Switches this record to storing its values in the given layout (or a map if null), moving over any
+   * values it already holds.
+   */
+  private void useLayout( ColumnLayout layout )
+  {
+    if( layout == _layout )
+    {
+      return;
+    }
+    List<String> columns = getColumns();
+    List<Object> vals = getValues( columns );
+    List<String> dirty = getDirtyColumns();
+
+    _layout = layout;
+    _slots = layout == null ? null : new Object[layout.size()];
+    _assigned = layout == null ? null : new BitSet( layout.size() );
+    _dirtySlots = layout == null ? null : new BitSet( layout.size() );
+    _values = null;
+    _dirty = null;
+    for( int i = 0; i < columns.size(); i++ )
+    {
+      setRawValue( columns.get( i ), vals.get( i ) );
+    }
+    if( !columns.isEmpty() )
+    {
+      markClean();
+      for( String column : dirty )
+      {
+        markDirty( column );
+      }
+    }
+  }
+
+  /**
+   * @return the columns that have been given a value, in slot order followed by any columns outside the layout
+   */
+  private List<String> getColumns()
+  {
+    List<String> columns = new ArrayList<>();
+    if( _layout != null )
+    {
+      for( int slot = _assigned.nextSetBit( 0 ); slot >= 0; slot = _assigned.nextSetBit( slot + 1 ) )
+      {
+        columns.add( _layout.getColumn( slot ) );
+      }
+    }
+    if( _values != null )
+    {
+      columns.addAll( _values.keySet() );
+    }
+    return columns;
+  }
+
+  /**
+   * @return the columns changed since this record was loaded or last saved, in slot order followed by any
+   * columns outside the layout in name order
+   */
+  private List<String> getDirtyColumns()
+  {
+    List<String> columns = new ArrayList<>();
+    if( _layout != null )
+    {
+      for( int slot = _dirtySlots.nextSetBit( 0 ); slot >= 0; slot = _dirtySlots.nextSetBit( slot + 1 ) )
+      {
+        columns.add( _layout.getColumn( slot ) );
+      }
+    }
+    if( _dirty != null )
+    {
+      columns.addAll( _dirty );
+    }
+    return columns;
+  }
+
+  /**
+   * @return true if any column has been changed since this record was loaded or last saved
+   */
+  public boolean isDirty()
+  {
+    return (_dirtySlots != null && !_dirtySlots.isEmpty()) || (_dirty != null && !_dirty.isEmpty());
+  }
+
+  public boolean isDirty( String column )
+  {
+    int slot = _layout == null ? -1 : _layout.slotOf( column );
+    if( slot >= 0 )
+    {
+      return _dirtySlots.get( slot );
+    }
+    return _dirty != null && _dirty.contains( column.toLowerCase() );
+  }
+
+  private void markDirty( String column )
+  {
+    int slot = _layout == null ? -1 : _layout.slotOf( column );
+    if( slot >= 0 )
+    {
+      _dirtySlots.set( slot );
+    }
+    else if( _dirty != null )
+    {
+      _dirty.add( column.toLowerCase() );
+    }
+  }
+
+  private void markClean()
+  {
+    if( _dirtySlots != null )
+    {
+      _dirtySlots.clear();
+    }
+    if( _dirty != null )
+    {
+      _dirty.clear();
+    }
+  }
+
+  void markPersisted()
+  {
+    _persisted = true;
+    markClean();
   }
 
   @Override
@@ -65,9 +316,13 @@ public class SQLRecord implements ISQLResult
   public void setConfig( IModelConfig config )
   {
     _config = config;
+    useLayout( config == null ? null : config.getColumnLayout() );
   }
 
   public boolean save() {
+    if(_persisted && !isDirty()) {
+      return true;
+    }
     if(!_config.isValidModifyingErrors(this)){
       System.out.println("Sorry, a validation error has occurred! Please check the errors.");
       return false;
@@ -85,32 +340,29 @@ public class SQLRecord implements ISQLResult
     StringBuilder valPlaceholders = new StringBuilder();
     LinkedList<Object> vals = new LinkedList<>();
 
-    for( Iterator<Map.Entry<String, Object>> values = _values.entrySet().iterator(); values.hasNext(); )
+    for( String column : getColumns() )
     {
-      Map.Entry<String, Object> pair = values.next();
-
-      valNames.append( pair.getKey() );
-      valPlaceholders.append( "?" );
-      vals.add( pair.getValue() );
-
-      if( values.hasNext() )
+      if( valNames.length() > 0 )
       {
         valNames.append( "," );
         valPlaceholders.append( "," );
       }
+      valNames.append( column );
+      valPlaceholders.append( "?" );
+      vals.add( getRawValue( column ) );
     }
 
     String sql = "INSERT INTO " + getTableName() + " (" + valNames + ")" + " VALUES (" + valPlaceholders + ")";
 
-    try
+    try( PreparedStatement preparedStatement = RagnarDB.prepareStatement( sql, vals, Statement.RETURN_GENERATED_KEYS ) )
     {
-      PreparedStatement preparedStatement = RagnarDB.prepareStatement( sql, vals, Statement.RETURN_GENERATED_KEYS );
       preparedStatement.executeUpdate();
       ResultSet tableKeys = preparedStatement.getGeneratedKeys();
       if(tableKeys.next()) {
         long autoGeneratedID = tableKeys.getInt( 1 );
         setRawValue( getIdColumn(), autoGeneratedID );
       }
+      markPersisted();
     }
     catch( SQLException e )
     {
@@ -119,143 +371,281 @@ public class SQLRecord implements ISQLResult
     return true;
   }
 
+  /**
+   * Inserts the given records in JDBC batches of {@link RagnarDB#getBatchSize()} rows.
+   *
+   * @see #createAll(Iterable, int)
+   */
+  public static int createAll( Iterable<? extends SQLRecord> records )
+  {
+    return createAll( records, RagnarDB.getBatchSize() );
+  }
+
+  /**
+   * Inserts the given records using one prepared statement per table and set of columns, sending the rows
+   * to the database in batches of at most batchSize. Generated ids are assigned back to the records, as
+   * create() does.
+   *
+   * The inserts run in a single transaction: if one fails, none are kept. When called inside an enclosing
+   * transaction only the inserts made here are rolled back.
+   *
+   * @return the number of records inserted
+   */
+  public static int createAll( Iterable<? extends SQLRecord> records, int batchSize )
+  {
+    if( batchSize < 1 )
+    {
+      throw new IllegalArgumentException( "Batch size must be at least 1" );
+    }
+
+    Map<List<String>, List<SQLRecord>> groups = new LinkedHashMap<>();
+    for( SQLRecord record : records )
+    {
+      List<String> key = new ArrayList<>();
+      key.add( record.getTableName() );
+      key.addAll( new TreeSet<>( record.getColumns() ) );
+      groups.computeIfAbsent( key, k -> new ArrayList<>() ).add( record );
+    }
+    if( groups.isEmpty() )
+    {
+      return 0;
+    }
+
+    try
+    {
+      int count = RagnarDB.inTransaction( conn -> {
+        int inserted = 0;
+        for( Map.Entry<List<String>, List<SQLRecord>> group : groups.entrySet() )
+        {
+          List<String> key = group.getKey();
+          inserted += insertGroup( conn, key.get( 0 ), key.subList( 1, key.size() ), group.getValue(), batchSize );
+        }
+        return inserted;
+      } );
+      for( List<SQLRecord> group : groups.values() )
+      {
+        for( SQLRecord record : group )
+        {
+          record.markPersisted();
+        }
+      }
+      return count;
+    }
+    catch( SQLException e )
+    {
+      throw GosuExceptionUtil.forceThrow( e );
+    }
+  }
+
+  private static int insertGroup( Connection conn, String tableName, List<String> columns, List<SQLRecord> records, int batchSize ) throws SQLException
+  {
+    StringBuilder valPlaceholders = new StringBuilder();
+    for( int i = 0; i < columns.size(); i++ )
+    {
+      valPlaceholders.append( i == 0 ? "?" : ",?" );
+    }
+    String sql = "INSERT INTO " + tableName + " (" + String.join( ",", columns ) + ")" + " VALUES (" + valPlaceholders + ")";
+
+    try( PreparedStatement preparedStatement = RagnarDB.prepareStatement( sql, Collections.emptyList(), Statement.RETURN_GENERATED_KEYS ) )
+    {
+      for( int start = 0; start < records.size(); start += batchSize )
+      {
+        List<SQLRecord> chunk = records.subList( start, Math.min( start + batchSize, records.size() ) );
+        insertChunk( conn, preparedStatement, columns, chunk );
+      }
+    }
+    return records.size();
+  }
+
+  private static void insertChunk( Connection conn, PreparedStatement preparedStatement, List<String> columns, List<SQLRecord> chunk ) throws SQLException
+  {
+    String idColumn = chunk.get( 0 ).getIdColumn();
+    boolean needsKeys = false;
+    for( SQLRecord record : chunk )
+    {
+      needsKeys |= record.getRawValue( idColumn ) == null;
+    }
+
+    String url = RagnarDB.getDBUrl();
+    if( needsKeys && NO_BATCH_KEYS.contains( url ) )
+    {
+      insertEach( preparedStatement, columns, chunk );
+      return;
+    }
+
+    Savepoint beforeChunk = needsKeys ? conn.setSavepoint() : null;
+    for( SQLRecord record : chunk )
+    {
+      RagnarDB.setVals( record.getValues( columns ), preparedStatement );
+      preparedStatement.addBatch();
+    }
+    preparedStatement.executeBatch();
+    if( !needsKeys )
+    {
+      return;
+    }
+
+    List<Long> keys = new ArrayList<>( chunk.size() );
+    ResultSet tableKeys = preparedStatement.getGeneratedKeys();
+    while( tableKeys.next() )
+    {
+      keys.add( tableKeys.getLong( 1 ) );
+    }
+    tableKeys.close();
+    if( keys.size() == chunk.size() )
+    {
+      for( int i = 0; i < chunk.size(); i++ )
+      {
+        chunk.get( i ).setRawValue( idColumn, keys.get( i ) );
+      }
+      conn.releaseSavepoint( beforeChunk );
+    }
+    else
+    {
+      // the driver can't tell us which key went to which row, so redo this chunk (and later ones) a row at a time
+      conn.rollback( beforeChunk );
+      NO_BATCH_KEYS.add( url );
+      insertEach( preparedStatement, columns, chunk );
+    }
+  }
+
+  private static void insertEach( PreparedStatement preparedStatement, List<String> columns, List<SQLRecord> chunk ) throws SQLException
+  {
+    for( SQLRecord record : chunk )
+    {
+      RagnarDB.setVals( record.getValues( columns ), preparedStatement );
+      preparedStatement.executeUpdate();
+      try( ResultSet tableKeys = preparedStatement.getGeneratedKeys() )
+      {
+        if( tableKeys.next() )
+        {
+          record.setRawValue( record.getIdColumn(), tableKeys.getLong( 1 ) );
+        }
+      }
+    }
+  }
+
+  private List<Object> getValues( List<String> columns )
+  {
+    List<Object> vals = new ArrayList<>( columns.size() );
+    for( String column : columns )
+    {
+      vals.add( getRawValue( column ) );
+    }
+    return vals;
+  }
+
   private String getIdColumn()
   {
     return _config.getIdColumn();
   }
 
+  /**
+   * Writes the columns changed since this record was loaded or last saved to the row with its id. Does nothing
+   * if no column has changed. The id of a persisted record can't be changed this way; doing so throws and
+   * leaves the record dirty.
+   */
   public boolean update()
   {
+    if( _persisted && isDirty( getIdColumn() ) )
+    {
+      throw new IllegalStateException( "The " + getIdColumn() + " of a persisted " + getTableName() + " record can't be changed" );
+    }
     StringBuilder valNames = new StringBuilder();
     LinkedList<Object> vals = new LinkedList<>();
 
-    for( Iterator<Map.Entry<String, Object>> values = _values.entrySet().iterator(); values.hasNext(); )
+    for( String column : getDirtyColumns() )
     {
-      Map.Entry<String, Object> pair = values.next();
-      if( !pair.getKey().equals( getIdColumn() ) )
+      if( !column.equalsIgnoreCase( getIdColumn() ) )
       {
-        valNames.append( pair.getKey() ).append("=?");
-        vals.add(pair.getValue());
-        if( values.hasNext() )
+        if( valNames.length() > 0 )
         {
           valNames.append( "," );
         }
+        valNames.append( column ).append( "=?" );
+        vals.add( getRawValue( column ) );
       }
     }
 
+    if( vals.isEmpty() )
+    {
+      markPersisted();
+      return true;
+    }
+
     String sql = "UPDATE " + getTableName() + " SET " + valNames + " WHERE " + getIdColumn() + "=?" ;
     vals.add( getRawValue( getIdColumn() ) );
 
-    try
+    try( PreparedStatement preparedStatement = RagnarDB.prepareStatement( sql, vals ) )
     {
-      PreparedStatement preparedStatement = RagnarDB.prepareStatement( sql, vals );
       preparedStatement.executeUpdate();
+      markPersisted();
     }
     catch( SQLException e )
     {
       e.printStackTrace();
     }
-    _persisted = true;
     return true;
   }
 
   public static SQLRecord read( String tableName, String idColumn, Object idValue ) throws SQLException
   {
-    PreparedStatement preparedStatement = RagnarDB.prepareStatement( "SELECT * FROM " + tableName + " WHERE " + idColumn + "=?", Collections.singletonList( idValue ) );
-    ResultSet resultSet = preparedStatement.executeQuery();
-    if( resultSet.next() )
+    try( PreparedStatement preparedStatement = RagnarDB.prepareStatement( "SELECT * FROM " + tableName + " WHERE " + idColumn + "=?", Collections.singletonList( idValue ) ) )
     {
-      SQLRecord record = new SQLRecord( tableName, idColumn );
-      ResultSetMetaData metaData = resultSet.getMetaData();
-      int columnCount = metaData.getColumnCount();
-      int i = 1;
-      while( i <= columnCount )
-      {
-        int columnType = metaData.getColumnType( i );
-        String columnName = metaData.getColumnName( i );
-        switch( columnType )
-        {
-          case Types.INTEGER:
-            record.setRawValue( columnName, resultSet.getInt( i ) );
-            break;
-          case Types.BIGINT:
-            record.setRawValue( columnName, resultSet.getLong( i ) );
-            break;
-          default:
-            record.setRawValue( columnName, resultSet.getObject( i ) );
-            break;
-        }
-        i++;
-      }
+      SQLRecord record = readRecord( preparedStatement.executeQuery(), tableName, idColumn );
+      QueryMetrics.rowsFetched( preparedStatement, record == null ? 0 : 1 );
       return record;
     }
+  }
+
+  private static SQLRecord readRecord( ResultSet resultSet, String tableName, String idColumn ) throws SQLException
+  {
+    if( resultSet.next() )
+    {
+      return new RowReader( resultSet.getMetaData() ).read( resultSet, new SQLRecord( tableName, idColumn ) );
+    }
     else
     {
       return null;
     }
   }
 
-  static <T> Iterator<T> select(String sql, List vals, IType impl) throws SQLException
+  /**
+   * @param fetchSize the number of rows to fetch per round trip, or 0 for the driver's default
+   */
+  static <T> ResultSetIterator<T> select(String sql, List vals, IType impl, int fetchSize) throws SQLException
   {
     PreparedStatement preparedStatement = RagnarDB.prepareStatement( sql, vals );
-    ResultSet resultSet = preparedStatement.executeQuery();
-    return new SQLRecordResultSetIterator<T>(resultSet, impl);
+    return new SQLRecordResultSetIterator<T>(preparedStatement, fetchSize, impl);
   }
 
-  static <T> Iterator<T> selectSingleColumn( String sql, List vals ) throws SQLException {
+  static <T> ResultSetIterator<T> selectSingleColumn( String sql, List vals, int fetchSize ) throws SQLException {
     PreparedStatement preparedStatement = RagnarDB.prepareStatement(sql, vals);
-    ResultSet resultSet = preparedStatement.executeQuery();
-    return new SingleColumnResultSetIterator<T>(resultSet);
-  }
-
-  static Iterable<SQLRecord> executeStatement(String sql, List vals, IType impl) throws SQLException
-  {
-//    System.out.println(sql + " @SQLRecord 210"); debugging logging info
-   PreparedStatement preparedStatement = RagnarDB.prepareStatement(sql, vals);
-    ResultSet resultSet = preparedStatement.executeQuery();
-//    System.out.println(sql + " @SQLRecord 213");
-    List<SQLRecord> results = new LinkedList<>();
-    while (resultSet.next()){
-      SQLRecord record = (SQLRecord) impl.getTypeInfo().getCallableConstructor().getConstructor().newInstance();
-      ResultSetMetaData metaData = resultSet.getMetaData();
-      int columnCount = metaData.getColumnCount();
-      int i = 1;
-      while( i <= columnCount )
-      {
-        int columnType = metaData.getColumnType( i );
-        String columnName = metaData.getColumnName( i );
-        switch( columnType )
-        {
-          case Types.INTEGER:
-            record.setRawValue( columnName, resultSet.getInt( i ) );
-            break;
-          case Types.BIGINT:
-            record.setRawValue( columnName, resultSet.getLong( i ) );
-            break;
-          case Types.VARCHAR:
-            record.setRawValue( columnName, resultSet.getString( i ));
-          default:
-            record.setRawValue( columnName, resultSet.getObject( i ) );
-            break;
-        }
-        i++;
-      }
-      results.add(record);
-    }
-    return results;
+    return new SingleColumnResultSetIterator<T>(preparedStatement, fetchSize);
   }
 
-  
-
+  /**
+   * Resolves how to instantiate records of the given type once, so that reading rows doesn't look up a
+   * constructor per row. Table types hand back their own factory, which also applies the table's model config.
+   */
+  static Supplier<SQLRecord> recordFactory( IType type )
+  {
+    ITypeInfo typeInfo = type.getTypeInfo();
+    if( typeInfo instanceof SQLTableTypeInfo )
+    {
+      return ((SQLTableTypeInfo)typeInfo).getRecordFactory();
+    }
+    IConstructorHandler constructor = typeInfo.getCallableConstructor().getConstructor();
+    return () -> (SQLRecord)constructor.newInstance();
+  }
 
   public boolean delete()
   {
     LinkedList<Object> vals = new LinkedList<>();
     String sql = "DELETE FROM " + getTableName() + " WHERE " + getIdColumn() + "=?" ;
     vals.add( getRawValue( getIdColumn() ) );
-    try
+    try( PreparedStatement preparedStatement = RagnarDB.prepareStatement( sql, vals ) )
     {
-      PreparedStatement preparedStatement = RagnarDB.prepareStatement( sql, vals );
       preparedStatement.executeUpdate();
     }
     catch( SQLException e )
@@ -265,14 +655,11 @@ public class SQLRecord implements ISQLResult
     return true;
   }
 
+  /**
+   * Column values by lower case column name. Callers put lower case names; lookups may use any case.
+   */
   static class ValMap extends HashMap<String, Object>
   {
-    @Override
-    public Object put( String key, Object value )
-    {
-      return super.put( key.toLowerCase(), value );
-    }
-
     @Override
     public Object get( Object key )
     {
@@ -280,21 +667,46 @@ public class SQLRecord implements ISQLResult
     }
   }
 
-  private static abstract class ResultSetIterator<Q> implements Iterator<Q> {
+  /**
+   * Iterates the results of a query, closing its statement (and so releasing a pooled connection) once the
+   * last row has been read, or when closed early.
+   */
+  static abstract class ResultSetIterator<Q> implements SQLCursor<Q> {
 
-    protected final ResultSetMetaData _metaData;
-    protected final int _columnCount;
+    protected final RowReader _reader;
+    private final PreparedStatement _statement;
     private final ResultSet _resultSet;
+    private long _rows;
     private boolean didNext = false;
     private boolean hasNext = false;
 
-    public ResultSetIterator( ResultSet resultSet )
+    public ResultSetIterator( PreparedStatement statement, int fetchSize )
     {
+      _statement = statement;
       try
       {
-        _resultSet = resultSet;
-        _metaData = resultSet.getMetaData();
-        _columnCount = _metaData.getColumnCount();
+        if( fetchSize > 0 )
+        {
+          statement.setFetchSize( fetchSize );
+        }
+        _resultSet = statement.executeQuery();
+        _reader = new RowReader( _resultSet.getMetaData() );
+      }
+      catch( SQLException e )
+      {
+        close();
+        throw GosuExceptionUtil.forceThrow( e );
+      }
+    }
+
+    @Override
+    public void close()
+    {
+      QueryMetrics.rowsFetched( _statement, _rows );
+      _rows = 0;
+      try
+      {
+        _statement.close();
       }
       catch( SQLException e )
       {
@@ -310,106 +722,83 @@ public class SQLRecord implements ISQLResult
           _resultSet.next();
         }
         Q val = transform( _resultSet );
+        _rows++;
         didNext = false;
-        if( !hasNext() )
-        {
-          _resultSet.close();
-        }
+        hasNext();
         return val;
       }
       catch( SQLException e )
       {
+        close();
         throw GosuExceptionUtil.forceThrow( e );
       }
     }
 
-    protected abstract Q transform( ResultSet resultSet );
+    protected abstract Q transform( ResultSet resultSet ) throws SQLException;
+
+    /**
+     * @return the connection the results are read from, or null once this cursor has been closed
+     */
+    Connection getConnection()
+    {
+      try
+      {
+        return _statement.isClosed() ? null : _statement.getConnection();
+      }
+      catch( SQLException e )
+      {
+        return null;
+      }
+    }
 
     public boolean hasNext(){
       if (!didNext) {
         try
         {
-          hasNext = _resultSet.next();
+          hasNext = !_statement.isClosed() && _resultSet.next();
         }
         catch( SQLException e )
         {
+          close();
           throw GosuExceptionUtil.forceThrow( e );
         }
         didNext = true;
+        if( !hasNext )
+        {
+          close();
+        }
       }
       return hasNext;
     }
   }
 
   private static class SQLRecordResultSetIterator<T> extends ResultSetIterator<T> {
-    private final IType _sqlRecordType;
+    private final Supplier<SQLRecord> _factory;
 
-    public SQLRecordResultSetIterator( ResultSet resultSet, IType sqlRecordType )
+    public SQLRecordResultSetIterator( PreparedStatement statement, int fetchSize, IType sqlRecordType )
     {
-      super( resultSet );
-      _sqlRecordType = sqlRecordType;
+      super( statement, fetchSize );
+      _factory = recordFactory( sqlRecordType );
     }
 
     @Override
-    protected T transform( ResultSet resultSet )
+    protected T transform( ResultSet resultSet ) throws SQLException
     {
-        SQLRecord record = (SQLRecord) _sqlRecordType.getTypeInfo().getCallableConstructor().getConstructor().newInstance();
-        return (T) record.initFromResultSet( resultSet, _columnCount, _metaData );
+      return (T) _reader.read( resultSet, _factory.get() );
     }
   }
 
   private static class SingleColumnResultSetIterator<T> extends ResultSetIterator<T> {
 
-    public SingleColumnResultSetIterator( ResultSet resultSet )
+    public SingleColumnResultSetIterator( PreparedStatement statement, int fetchSize )
     {
-      super( resultSet );
+      super( statement, fetchSize );
     }
 
     @Override
-    protected T transform( ResultSet resultSet )
-    {
-      try
-      {
-        return (T)getColumnValue( resultSet, _metaData.getColumnType( 1 ), 1 );
-      }
-      catch( SQLException e )
-      {
-        throw GosuExceptionUtil.forceThrow( e );
-      }
-    }
-  }
-
-  private SQLRecord initFromResultSet( ResultSet resultSet, int columnCount, ResultSetMetaData metaData )
-  {
-    try
-    {
-      int i = 1;
-      while( i <= columnCount )
-      {
-        int columnType = metaData.getColumnType( i );
-        String columnName = metaData.getColumnName( i );
-        Object value = getColumnValue(resultSet, columnType, i);
-        setRawValue( columnName, value );
-        i++;
-      }
-      return this;
-    }
-    catch( SQLException e )
-    {
-      throw GosuExceptionUtil.forceThrow( e );
-    }
-  }
-
-  private static Object getColumnValue( ResultSet resultSet, int columnType, int column ) throws SQLException
-  {
-    switch( columnType )
+    protected T transform( ResultSet resultSet ) throws SQLException
     {
-      case Types.INTEGER:
-        return resultSet.getInt( column );
-      case Types.BIGINT:
-        return resultSet.getLong( column );
-      default:
-        return resultSet.getObject( column );
+      return (T)_reader.read( resultSet, 1 );
     }
   }
 
@@ -0,0 +1,45 @@
+package ragnardb.runtime;
+
+import gw.lang.reflect.IPropertyInfo;
+import gw.lang.reflect.features.PropertyReference;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A set based update of the rows matching a query, built up one property at a time with
+ * {@link SQLQuery#set(PropertyReference, Object)} and run as a single UPDATE ... WHERE statement.
+ */
+public final class SQLUpdate<T>
+{
+  private final SQLQuery<T> _query;
+  private final Map<IPropertyInfo, Object> _values;
+
+  SQLUpdate( SQLQuery<T> query )
+  {
+    this( query, Collections.emptyMap() );
+  }
+
+  private SQLUpdate( SQLQuery<T> query, Map<IPropertyInfo, Object> values )
+  {
+    _query = query;
+    _values = values;
+  }
+
+  public <V> SQLUpdate<T> set( PropertyReference<Object, V> ref, V value )
+  {
+    Map<IPropertyInfo, Object> values = new LinkedHashMap<>( _values );
+    values.put( ref.getPropertyInfo(), value );
+    return new SQLUpdate<T>( _query, values );
+  }
+
+  /**
+   * @return the number of rows updated
+   */
+  public int execute() throws SQLException
+  {
+    return _query.updateColumns( _values );
+  }
+}
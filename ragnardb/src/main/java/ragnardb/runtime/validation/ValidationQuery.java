@@ -20,8 +20,7 @@ public class ValidationQuery {
   }
 
   public boolean unique(){
-    try {
-      PreparedStatement preparedStatement = RagnarDB.prepareStatement(sql, bindVals);
+    try (PreparedStatement preparedStatement = RagnarDB.prepareStatement(sql, bindVals)) {
       ResultSet resultSet = preparedStatement.executeQuery();
       return !resultSet.next();
     } catch (SQLException e) {
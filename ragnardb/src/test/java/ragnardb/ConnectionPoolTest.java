@@ -0,0 +1,200 @@
+package ragnardb;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import ragnardb.runtime.SQLRecord;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+
+public class ConnectionPoolTest
+{
+  private static final String URL = "jdbc:h2:mem:connectionpooltest;DB_CLOSE_DELAY=-1";
+
+  private ConnectionPool _pool;
+
+  @Before
+  public void createPool()
+  {
+    _pool = new ConnectionPool( URL );
+  }
+
+  @After
+  public void closePool()
+  {
+    _pool.close();
+  }
+
+  @Test
+  public void closedConnectionsAreReused() throws SQLException
+  {
+    Connection first = _pool.borrow();
+    Assert.assertEquals( 1, _pool.getActiveCount() );
+    first.close();
+    Assert.assertTrue( first.isClosed() );
+    Assert.assertEquals( 0, _pool.getActiveCount() );
+    Assert.assertEquals( 1, _pool.getIdleCount() );
+
+    Connection second = _pool.borrow();
+    Assert.assertEquals( 0, _pool.getIdleCount() );
+    Assert.assertFalse( second.isClosed() );
+    second.close();
+  }
+
+  @Test
+  public void borrowTimesOutWhenExhausted() throws SQLException
+  {
+    _pool.setMaxSize( 1 );
+    _pool.setMaxWait( 50 );
+    try( Connection ignored = _pool.borrow() )
+    {
+      _pool.borrow();
+      Assert.fail( "Expected the pool to be exhausted" );
+    }
+    catch( SQLException e )
+    {
+      Assert.assertTrue( e.getMessage().startsWith( "Timed out" ) );
+    }
+    Assert.assertEquals( 1, _pool.getIdleCount() );
+  }
+
+  @Test
+  public void idleConnectionsAreEvicted() throws Exception
+  {
+    _pool.setMaxIdleTime( 0 );
+    Connection first = _pool.borrow();
+    Connection second = _pool.borrow();
+    first.close();
+    second.close();
+    Assert.assertEquals( 2, _pool.getIdleCount() );
+
+    _pool.setMinSize( 1 );
+    Thread.sleep( 10 );
+    _pool.borrow().close();
+    Assert.assertEquals( 1, _pool.getIdleCount() );
+  }
+
+  @Test
+  public void returnedConnectionsAreReset() throws SQLException
+  {
+    _pool.setMaxSize( 1 );
+    Connection conn = _pool.borrow();
+    conn.setAutoCommit( false );
+    conn.close();
+
+    try( Connection again = _pool.borrow() )
+    {
+      Assert.assertTrue( again.getAutoCommit() );
+    }
+  }
+
+  @Test
+  public void statementsReleaseTheirConnection() throws SQLException
+  {
+    RagnarDB.setDBUrl( URL );
+    RagnarDB.execStatement( "CREATE TABLE IF NOT EXISTS POOLED (id bigint auto_increment, name nchar(50))" );
+    ConnectionPool pool = RagnarDB.getConnectionPool();
+
+    SQLRecord record = new SQLRecord( "POOLED", "id" );
+    record.setRawValue( "name", "Carson" );
+    record.create();
+    Assert.assertNotNull( SQLRecord.read( "POOLED", "id", record.getRawValue( "id" ) ) );
+    Assert.assertEquals( 0, pool.getActiveCount() );
+
+    PreparedStatement stmt = RagnarDB.prepareStatement( "SELECT * FROM POOLED", Collections.emptyList() );
+    Assert.assertEquals( 1, pool.getActiveCount() );
+    stmt.close();
+    Assert.assertEquals( 0, pool.getActiveCount() );
+  }
+
+  @Test
+  public void preparedStatementsAreCachedPerConnection() throws SQLException
+  {
+    _pool.setMaxSize( 1 );
+    try( Connection conn = _pool.borrow() )
+    {
+      PreparedStatement first = conn.prepareStatement( "SELECT 1" );
+      first.close();
+      long hits = _pool.getStatementCacheHits();
+      PreparedStatement second = conn.prepareStatement( "SELECT 1" );
+      Assert.assertEquals( hits + 1, _pool.getStatementCacheHits() );
+
+      // the cached statement is checked out, so a nested use gets its own statement
+      long misses = _pool.getStatementCacheMisses();
+      try( PreparedStatement nested = conn.prepareStatement( "SELECT 1" ) )
+      {
+        Assert.assertEquals( misses + 1, _pool.getStatementCacheMisses() );
+        Assert.assertTrue( nested.executeQuery().next() );
+      }
+      Assert.assertTrue( second.executeQuery().next() );
+      second.close();
+    }
+  }
+
+  @Test
+  public void cachedStatementsAreResetForTheNextUser() throws SQLException
+  {
+    _pool.setMaxSize( 1 );
+    try( Connection conn = _pool.borrow() )
+    {
+      String sql = "SELECT X FROM SYSTEM_RANGE(1, 3)";
+      try( PreparedStatement first = conn.prepareStatement( sql ) )
+      {
+        first.setMaxRows( 1 );
+        first.setQueryTimeout( 7 );
+      }
+      long hits = _pool.getStatementCacheHits();
+      try( PreparedStatement second = conn.prepareStatement( sql ) )
+      {
+        Assert.assertEquals( hits + 1, _pool.getStatementCacheHits() );
+        Assert.assertEquals( 0, second.getMaxRows() );
+        Assert.assertEquals( 0, second.getQueryTimeout() );
+        ResultSet resultSet = second.executeQuery();
+        int rows = 0;
+        while( resultSet.next() )
+        {
+          rows++;
+        }
+        Assert.assertEquals( 3, rows );
+      }
+    }
+  }
+
+  @Test
+  public void statementsHandOutTheirLease() throws SQLException
+  {
+    _pool.setMaxSize( 1 );
+    try( Connection conn = _pool.borrow() )
+    {
+      try( PreparedStatement cached = conn.prepareStatement( "SELECT 1" ) )
+      {
+        Assert.assertSame( conn, cached.getConnection() );
+        // a nested use of the same sql gets an uncached statement, which must not leak the connection either
+        try( PreparedStatement nested = conn.prepareStatement( "SELECT 1" ) )
+        {
+          Assert.assertSame( conn, nested.getConnection() );
+        }
+      }
+    }
+  }
+
+  @Test
+  public void statementCacheIsBounded() throws SQLException
+  {
+    _pool.setMaxSize( 1 );
+    _pool.setStatementCacheSize( 1 );
+    try( Connection conn = _pool.borrow() )
+    {
+      conn.prepareStatement( "SELECT 1" ).close();
+      conn.prepareStatement( "SELECT 2" ).close();
+      long misses = _pool.getStatementCacheMisses();
+      conn.prepareStatement( "SELECT 1" ).close();
+      Assert.assertEquals( misses + 1, _pool.getStatementCacheMisses() );
+    }
+  }
+}
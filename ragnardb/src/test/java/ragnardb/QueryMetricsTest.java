@@ -0,0 +1,128 @@
+package ragnardb;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+public class QueryMetricsTest
+{
+  private static final String URL = "jdbc:h2:mem:querymetricstest;DB_CLOSE_DELAY=-1";
+
+  private QueryMetrics _metrics;
+
+  @Before
+  public void createTable() throws SQLException
+  {
+    RagnarDB.setDBUrl( URL );
+    RagnarDB.execStatement( "CREATE TABLE IF NOT EXISTS METRICS (name varchar(50), age int)" );
+    RagnarDB.execStatement( "DELETE FROM METRICS" );
+    _metrics = RagnarDB.getQueryMetrics();
+    _metrics.reset();
+  }
+
+  @After
+  public void enable()
+  {
+    _metrics.setEnabled( true );
+  }
+
+  @Test
+  public void sqlIsGroupedByShape()
+  {
+    Assert.assertEquals( "SELECT * FROM t1 WHERE a = ? AND b IN ( ?, ... ) AND c > ?",
+                         QueryMetrics.normalize( "SELECT * FROM t1\n  WHERE a = 'it''s' AND b IN ( ? , ? , ? ) AND c > 4.2e1" ) );
+    Assert.assertEquals( QueryMetrics.normalize( "SELECT * FROM t1 WHERE b IN (?, ?)" ),
+                         QueryMetrics.normalize( "SELECT * FROM t1 WHERE b IN (?, ?, ?, ?)" ) );
+  }
+
+  @Test
+  public void histogramPercentilesAreCloseToTheRecordedValues()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Assert.assertEquals( 0, histogram.getPercentile( 0.5 ) );
+    for( long micros = 1; micros <= 1000; micros++ )
+    {
+      histogram.record( micros * 1000 );
+    }
+    Assert.assertEquals( 500000, histogram.getPercentile( 0.5 ), 500000 * 0.07 );
+    Assert.assertEquals( 990000, histogram.getPercentile( 0.99 ), 990000 * 0.07 );
+  }
+
+  @Test
+  public void statementsAreRecordedByShape() throws SQLException
+  {
+    List<List<Object>> rows = Arrays.asList( Arrays.asList( "Ada", 36 ), Arrays.asList( "Alan", 41 ), Arrays.asList( "Grace", 85 ) );
+    RagnarDB.executeBatch( "INSERT INTO METRICS (name, age) VALUES (?, ?)", rows, 2 );
+    QueryMetrics.Snapshot insert = _metrics.getShape( "INSERT INTO METRICS (name, age) VALUES (?, ?)" );
+    Assert.assertEquals( "INSERT INTO METRICS (name, age) VALUES (?, ...)", insert.getSql() );
+    Assert.assertEquals( 2, insert.getExecutions() );
+    Assert.assertEquals( 2 * (3 + 4 + 5) + 3 * 4, insert.getBytesBound() );
+    Assert.assertTrue( insert.getP99Nanos() >= insert.getP50Nanos() );
+    Assert.assertTrue( insert.getP50Nanos() > 0 );
+
+    RagnarDB.execStatement( "UPDATE METRICS SET age = 37 WHERE name = 'Ada'" );
+    RagnarDB.execStatement( "UPDATE METRICS SET age = 42 WHERE name = 'Alan'" );
+    QueryMetrics.Snapshot update = _metrics.getShape( "UPDATE METRICS SET age = 1 WHERE name = 'Someone'" );
+    Assert.assertEquals( 2, update.getExecutions() );
+    Assert.assertEquals( 2, update.getConnectionsAcquired() );
+    Assert.assertEquals( 2, update.getStatementCacheMisses() );
+
+    Assert.assertEquals( 3, RagnarDB.count( "METRICS" ) );
+    Assert.assertEquals( 3, RagnarDB.count( "METRICS" ) );
+    QueryMetrics.Snapshot count = _metrics.getShape( "SELECT COUNT(1) FROM METRICS" );
+    Assert.assertEquals( 2, count.getRowsFetched() );
+    Assert.assertEquals( 0.5, count.getStatementCacheHitRate(), 0 );
+
+    Assert.assertEquals( 3, _metrics.getShapes().size() );
+  }
+
+  @Test
+  public void disabledMetricsRecordNothing() throws SQLException
+  {
+    _metrics.setEnabled( false );
+    try( PreparedStatement stmt = RagnarDB.prepareStatement( "INSERT INTO METRICS (name, age) VALUES (?, ?)", Arrays.asList( "Ada", 36 ) ) )
+    {
+      stmt.executeUpdate();
+    }
+    Assert.assertTrue( _metrics.getShapes().isEmpty() );
+  }
+
+  @Test
+  public void shapesArePublishedOverJmx() throws Exception
+  {
+    RagnarDB.execStatement( "DELETE FROM METRICS WHERE age > 100" );
+    CompositeData[] shapes = (CompositeData[])ManagementFactory.getPlatformMBeanServer()
+      .getAttribute( new ObjectName( QueryMetrics.OBJECT_NAME ), "Shapes" );
+    Assert.assertEquals( 1, shapes.length );
+    Assert.assertEquals( "DELETE FROM METRICS WHERE age > ?", shapes[0].get( "sql" ) );
+    Assert.assertEquals( 1L, shapes[0].get( "executions" ) );
+  }
+
+  @Test
+  public void shapesBeyondTheLimitAreCountedTogether() throws SQLException
+  {
+    _metrics.setMaxShapes( 1 );
+    try
+    {
+      RagnarDB.execStatement( "DELETE FROM METRICS WHERE age > 100" );
+      RagnarDB.execStatement( "DELETE FROM METRICS WHERE name = 'Nobody'" );
+      RagnarDB.execStatement( "DELETE FROM METRICS WHERE name IS NULL" );
+      Assert.assertEquals( 2, _metrics.getShapes().size() );
+      Assert.assertEquals( 2, _metrics.getShape( QueryMetrics.OTHER_SHAPE ).getExecutions() );
+    }
+    finally
+    {
+      _metrics.setMaxShapes( 1000 );
+    }
+  }
+}
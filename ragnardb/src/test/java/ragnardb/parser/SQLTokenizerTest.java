@@ -1,12 +1,20 @@
 package ragnardb.parser;
 
+import gw.util.StreamUtil;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class SQLTokenizerTest {
 
@@ -279,4 +287,56 @@ public class SQLTokenizerTest {
     assertEquals(TokenType.IDENT, tok.getType());
     assertEquals("dklfa dlfAl192@#   ", tok.getText());
   }
+
+  @Test
+  public void scannerModeMatchesReaderMode() throws IOException {
+    for(String source : new String[]{readResource("/createtablestatements.txt"), readResource("/selectstatements.txt"),
+                                     "Select FooBar\r\nfrom T1 where identifier_2 = long\rname"}) {
+      SQLTokenizer reader = new SQLTokenizer(new StringReader(source));
+      SQLTokenizer scanner = new SQLTokenizer(source.toCharArray(), SQLTokenizer.MEMORY_FILE);
+      Token expected;
+      do {
+        expected = reader.get();
+        Token actual = scanner.get();
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getLine(), actual.getLine());
+        assertEquals(expected.getCol(), actual.getCol());
+        assertEquals(expected.getOffset(), actual.getOffset());
+        assertEquals(expected.getCasedText(), actual.getCasedText());
+        assertEquals(expected.getText(), actual.getText());
+      } while(expected.getType() != TokenType.EOF);
+    }
+  }
+
+  @Test
+  public void keywordsAreMatchedInPlace() {
+    char[] text = "xSeLeCtx auto_increment selects".toCharArray();
+    assertEquals(TokenType.SELECT, TokenType.find(text, 1, 6));
+    assertEquals(TokenType.AUTO_INCREMENT, TokenType.find(text, 9, 14));
+    assertNull(TokenType.find(text, 24, 7));
+    assertNull(TokenType.find(text, 0, 6));
+  }
+
+  @Test
+  public void tokensLetGoOfTheSourceOnceScanned() {
+    char[] source = "select FooBar from T1".toCharArray();
+    SQLTokenizer tokenizer = new SQLTokenizer(source, SQLTokenizer.MEMORY_FILE);
+    List<Token> tokens = new ArrayList<>();
+    Token tok;
+    do {
+      tok = tokenizer.get();
+      tokens.add(tok);
+    } while(tok.getType() != TokenType.EOF);
+
+    // the identifiers' text was copied out at the end, so reusing the buffer doesn't change it
+    Arrays.fill(source, 'x');
+    assertEquals("FooBar", tokens.get(1).getCasedText());
+    assertEquals("t1", tokens.get(3).getText());
+  }
+
+  private String readResource(String name) throws IOException {
+    try(Reader reader = new InputStreamReader(getClass().getResourceAsStream(name))) {
+      return StreamUtil.getContent(reader);
+    }
+  }
 }
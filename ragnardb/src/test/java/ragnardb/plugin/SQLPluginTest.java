@@ -1,20 +1,47 @@
 package ragnardb.plugin;
 
+import gw.fs.IFile;
 import gw.lang.Gosu;
 import gw.lang.reflect.*;
+import gw.lang.reflect.features.PropertyReference;
 import gw.lang.reflect.java.IJavaType;
 import gw.lang.reflect.java.JavaTypes;
+import gw.util.Pair;
+import gw.util.StreamUtil;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
-
+import ragnardb.ConnectionPool;
+import ragnardb.RagnarDB;
+import ragnardb.parser.SQLParser;
+import ragnardb.parser.SQLTokenizer;
+import ragnardb.parser.ast.CreateTable;
+import ragnardb.parser.ast.DDL;
+import ragnardb.parser.ast.JavaVar;
+import ragnardb.parser.ast.SQL;
+import ragnardb.parser.ast.Statement;
+import ragnardb.runtime.SQLConstraint;
+import ragnardb.runtime.SQLPage;
+import ragnardb.runtime.SQLQuery;
+import ragnardb.runtime.SQLRecord;
+
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.*;
 
@@ -78,6 +105,17 @@ public class SQLPluginTest {
     assertNotNull(execute);
   }
 
+  @Test
+  public void sqlTemplatesBindVariablesInPosition() {
+    String source = "SELECT * FROM Contacts\nWHERE (Age > @age:java.lang.Integer) AND FirstName <> @name:java.lang.String\nOR Age = @age;";
+    Statement statement = (Statement) new SQLParser(new SQLTokenizer(new StringReader(source))).parse();
+    List<JavaVar> parameters = Arrays.asList(new JavaVar("name"), new JavaVar("age"));
+    SQLTemplate template = SQLTemplate.compile(source, statement.getVariables(), parameters);
+
+    assertEquals("SELECT * FROM Contacts\nWHERE (Age > ?) AND FirstName <> ?\nOR Age = ?", template.getSQL());
+    assertEquals(Arrays.asList(39, "Carson", 39), template.bind(new Object[]{"Carson", 39}));
+  }
+
   @Test
   public void testSQLResult() {
     TypeSystem.getByFullNameIfValid("ragnardb.foo.Users");
@@ -92,6 +130,179 @@ public class SQLPluginTest {
   }
 
 
+  @Test
+  public void sqlQueriesStreamTheirResults() throws SQLException {
+    createContacts();
+    RagnarDB.execStatement("UPDATE CONTACTS SET UserId = 1 WHERE Age = 46");
+
+    ISQLQueryType records = (ISQLQueryType) TypeSystem.getByFullNameIfValid("ragnardb.foo.MyQuery2");
+    Iterable<SQLRecord> contacts = (Iterable<SQLRecord>) records.getTypeInfo().getMethod("execute").getCallHandler().handleCall(null);
+    Set<String> names = new HashSet<>();
+    for(SQLRecord contact : contacts) {
+      names.add(contact.getRawValue("FirstName").toString().trim());
+    }
+    assertEquals(new HashSet<>(Arrays.asList("Scott", "Kyle")), names);
+
+    ISQLQueryType scalars = (ISQLQueryType) TypeSystem.getByFullNameIfValid("ragnardb.foo.MyQuery3");
+    SQLQuery<Object> firstNames = (SQLQuery<Object>) scalars.getTypeInfo().getMethod("execute", JavaTypes.INTEGER()).getCallHandler().handleCall(null, 39);
+    assertEquals("Carson", firstNames.first().toString().trim());
+    try(Stream<Object> all = firstNames.stream()) {
+      assertEquals(1, all.count());
+    }
+    assertEquals(0, RagnarDB.getConnectionPool().getActiveCount());
+  }
+
+  @Test
+  public void sqlStatementsExecuteInBatches() throws SQLException {
+    createContacts();
+    ISQLQueryType insert = (ISQLQueryType) TypeSystem.getByFullNameIfValid("ragnardb.foo.InsertContact");
+    IMethodInfo executeAll = insert.getTypeInfo().getMethod("executeAll", JavaTypes.LIST());
+    assertNotNull(executeAll);
+    assertNotNull(insert.getTypeInfo().getMethod("execute", JavaTypes.STRING(), JavaTypes.INTEGER()));
+
+    int batchSize = RagnarDB.getBatchSize();
+    RagnarDB.setBatchSize(2);
+    try {
+      List<List<Object>> rows = Arrays.asList(Arrays.asList("Ada", 36), Arrays.asList("Alan", 41), Arrays.asList("Grace", 85));
+      int[] counts = (int[]) executeAll.getCallHandler().handleCall(null, rows);
+      assertArrayEquals(new int[]{1, 1, 1}, counts);
+      assertEquals(6, RagnarDB.count("CONTACTS"));
+
+      // a failing row rolls back the whole call
+      try {
+        executeAll.getCallHandler().handleCall(null, Arrays.asList(Arrays.asList("Edsger", 72), Arrays.asList("Barbara", "eighty")));
+        fail("Expected the second row to fail");
+      } catch(Exception e) {
+        // expected
+      }
+      assertEquals(6, RagnarDB.count("CONTACTS"));
+    } finally {
+      RagnarDB.setBatchSize(batchSize);
+    }
+    assertEquals(0, RagnarDB.getConnectionPool().getActiveCount());
+  }
+
+  @Test
+  public void queriesResolveTablesAndColumnsFromTheDdl() {
+    ISQLQueryType query = (ISQLQueryType) TypeSystem.getByFullNameIfValid("ragnardb.foo.MyQuery2");
+    assertEquals("ragnardb.foo.Users.Contact", query.getTable("contacts").getName());
+    assertNull(query.getTable("nosuchtable"));
+    assertEquals(JavaTypes.pINT(), query.getColumn("Age", "contacts"));
+    assertEquals(JavaTypes.OBJECT(), query.getColumn("NoSuchColumn", "contacts"));
+    assertEquals("FirstName", query.getColumnProperty("firstname", "contacts").getColumnName());
+    assertNull(query.getColumnProperty("firstname", "nosuchtable"));
+  }
+
+  @Test
+  public void queriesOnlyResolveTablesFromTheirOwnNamespace() {
+    ISQLQueryType foo = (ISQLQueryType) TypeSystem.getByFullNameIfValid("ragnardb.foo.MyQuery2");
+    ISQLQueryType foobar = (ISQLQueryType) TypeSystem.getByFullNameIfValid("ragnardb.foobar.Nicknames");
+    assertNull(foo.getTable("gadgets"));
+    assertEquals("ragnardb.foo.Users.Contact", foo.getTable("contacts").getName());
+    assertEquals("ragnardb.foobar.Gadgets.Contact", foobar.getTable("contacts").getName());
+    assertEquals(JavaTypes.OBJECT(), foo.getColumn("Nickname", "contacts"));
+    assertEquals("Nickname", foobar.getColumnProperty("nickname", "contacts").getColumnName());
+  }
+
+  @Test
+  public void sourcesArePreparsedInParallel() {
+    SQLPlugin plugin = ((ISQLQueryType) TypeSystem.getByFullNameIfValid("ragnardb.foo.MyQuery2")).getPlugin();
+    List<IFile> files = new ArrayList<>();
+    for(Pair<String, IFile> file : plugin.findAllFilesByExtension(".ddl")) {
+      files.add(file.getSecond());
+    }
+    for(Pair<String, IFile> file : plugin.findAllFilesByExtension(".sql")) {
+      files.add(file.getSecond());
+    }
+
+    SQLParseCache parallel = new SQLParseCache();
+    parallel.preparse(files, 4);
+    SQLParseCache sequential = new SQLParseCache();
+    sequential.preparse(files, 1);
+    for(IFile file : files) {
+      try {
+        SQL tree = parallel.get(file);
+        assertSame(tree, parallel.get(file));
+        assertEquals(sequential.get(file).getClass(), tree.getClass());
+      } catch(IOException e) {
+        fail(e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void parseTreesAreStoredBetweenRuns() throws IOException {
+    SQLPlugin plugin = ((ISQLQueryType) TypeSystem.getByFullNameIfValid("ragnardb.foo.MyQuery2")).getPlugin();
+    IFile main = plugin.findAllFilesByExtension(".ddl").stream()
+      .filter(p -> p.getFirst().endsWith("Main.ddl")).findFirst().get().getSecond();
+    File dir = Files.createTempDirectory("ragnardb-ast").toFile();
+
+    DDL parsed = (DDL) new SQLParseCache(() -> dir).get(main);
+    assertEquals(1, dir.listFiles().length);
+    DDL loaded = (DDL) new SQLParseCache(() -> dir).get(main);
+    assertNotSame(parsed, loaded);
+    assertEquals(parsed.getList().stream().map(CreateTable::getTableName).collect(Collectors.toList()),
+                 loaded.getList().stream().map(CreateTable::getTableName).collect(Collectors.toList()));
+    assertEquals(parsed.getList().get(1).getColumnDefinitions().size(), loaded.getList().get(1).getColumnDefinitions().size());
+
+    // an entry for other content is ignored
+    SQLParseStore store = new SQLParseStore(dir);
+    String path = main.getPath().getFileSystemPathString();
+    assertNotNull(store.load(path, StreamUtil.getContent(main.openInputStream())));
+    assertNull(store.load(path, "CREATE TABLE T (id int);".getBytes()));
+
+    // every source's tree can be stored
+    File all = Files.createTempDirectory("ragnardb-ast").toFile();
+    SQLParseCache cache = new SQLParseCache(() -> all);
+    List<Pair<String, IFile>> sources = plugin.findAllFilesByExtension(".ddl");
+    sources.addAll(plugin.findAllFilesByExtension(".sql"));
+    for(Pair<String, IFile> source : sources) {
+      cache.get(source.getSecond());
+    }
+    assertEquals(sources.size(), all.listFiles().length);
+    SQLParseStore allStore = new SQLParseStore(all);
+    for(Pair<String, IFile> source : sources) {
+      IFile file = source.getSecond();
+      assertNotNull(file.getName(), allStore.load(file.getPath().getFileSystemPathString(), StreamUtil.getContent(file.openInputStream())));
+    }
+
+    // an entry holding anything but a parse tree is refused before it is instantiated
+    try(ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(store.entryFor(path))))) {
+      out.writeObject(new java.util.Date());
+    }
+    assertNull(store.load(path, StreamUtil.getContent(main.openInputStream())));
+    assertFalse(SQLParseStore.isAllowed("java.util.Date"));
+    assertTrue(SQLParseStore.isAllowed("[Lragnardb.parser.ast.Term;"));
+  }
+
+  @Test
+  public void refreshingAFileRebuildsOnlyItAndItsDependents() {
+    ISQLQueryType query = (ISQLQueryType) TypeSystem.getByFullNameIfValid("ragnardb.foo.MyQuery2");
+    query.getTypeInfo();
+    TypeSystem.getByFullNameIfValid("ragnardb.foo.Vehicles.Car");
+    SQLPlugin plugin = query.getPlugin();
+    IFile users = plugin.findAllFilesByExtension(".ddl").stream()
+      .filter(p -> p.getFirst().endsWith("Users.ddl")).findFirst().get().getSecond();
+    IFile myQuery = plugin.findAllFilesByExtension(".sql").stream()
+      .filter(p -> p.getFirst().endsWith("MyQuery.sql")).findFirst().get().getSecond();
+    ISQLTypeBase vehicles = plugin.getLoadedType("ragnardb.foo.Vehicles");
+    ISQLTypeBase myQuery2 = plugin.getLoadedType("ragnardb.foo.MyQuery2");
+    assertNotNull(vehicles);
+    assertNotNull(myQuery2);
+
+    // MyQuery2 resolved its columns against the contacts table, which Users.ddl declares
+    plugin.refreshedFile(users, new String[]{"ragnardb.foo.Users"}, RefreshKind.MODIFICATION);
+    assertNull(plugin.getLoadedType("ragnardb.foo.Users"));
+    assertNull(plugin.getLoadedType("ragnardb.foo.MyQuery2"));
+    assertSame(vehicles, plugin.getLoadedType("ragnardb.foo.Vehicles"));
+
+    assertNotNull(plugin.getType("ragnardb.foo.MyQuery2"));
+    myQuery2 = plugin.getLoadedType("ragnardb.foo.MyQuery2");
+    plugin.refreshedFile(myQuery, new String[]{"ragnardb.foo.MyQuery"}, RefreshKind.MODIFICATION);
+    assertSame(myQuery2, plugin.getLoadedType("ragnardb.foo.MyQuery2"));
+    assertSame(vehicles, plugin.getLoadedType("ragnardb.foo.Vehicles"));
+  }
+
   @Test
   public void oneSourceWithMultipleTypes() {
     IType result = TypeSystem.getByFullNameIfValid("ragnardb.foo.Vehicles.Car");
@@ -169,6 +380,11 @@ public class SQLPluginTest {
     assertNotNull(findAllByAge);
     assertEquals("java.lang.Iterable<ragnardb.foo.Users.Contact>", findAllByAge.getReturnType().getName()); //returns Iterable of Contacts //TODO KB
 
+    IMethodInfo createAll = ti.getMethod("createAll", JavaTypes.ITERABLE().getParameterizedType(result));
+    assertNotNull(createAll);
+    assertTrue(createAll.isStatic());
+    assertEquals("int", createAll.getReturnType().getName());
+
     IMethodInfo findByAgeWithWrongSignature = ti.getMethod("findByAge", JavaTypes.STRING());
     assertNull(findByAgeWithWrongSignature);
 
@@ -176,6 +392,319 @@ public class SQLPluginTest {
     assertNull(unknownMethodWithNoArgs);
   }
 
+  @Test
+  public void recordFactoryAppliesModelConfig() {
+    ISQLTableType contact = (ISQLTableType) TypeSystem.getByFullNameIfValid("ragnardb.foo.Users.Contact");
+    SQLTableTypeInfo ti = (SQLTableTypeInfo) contact.getTypeInfo();
+
+    SQLRecord record = ti.getRecordFactory().get();
+    assertTrue("CONTACTS".equalsIgnoreCase(record.getTableName()));
+    assertNotSame(record, ti.getRecordFactory().get());
+
+    SQLRecord constructed = (SQLRecord) ti.getCallableConstructor().getConstructor().newInstance();
+    assertEquals(record.getTableName(), constructed.getTableName());
+  }
+
+  @Test
+  public void findByFetchesASingleRow() throws SQLException {
+    SQLTableTypeInfo ti = createContacts();
+    IPropertyInfo age = ti.getProperty("Age");
+
+    SQLRecord carson = (SQLRecord) ti.getMethod("findByAge", JavaTypes.pINT()).getCallHandler().handleCall(null, 39);
+    assertEquals("Carson", carson.getRawValue("FirstName").toString().trim());
+    assertNull(ti.getMethod("findByAge", JavaTypes.pINT()).getCallHandler().handleCall(null, 12));
+
+    SQLQuery<SQLRecord> all = (SQLQuery<SQLRecord>) ti.getProperty("All").getAccessor().getValue(null);
+    assertTrue(all.where(SQLConstraint.isComparator(age, 46, "=")).exists());
+    assertFalse(all.where(SQLConstraint.isComparator(age, 12, "=")).exists());
+    assertEquals(carson.getRawValue("id"), all.where(SQLConstraint.isComparator(age, 39, "=")).single().getRawValue("id"));
+    try {
+      all.where(SQLConstraint.isComparator(age, 46, "=")).single();
+      fail("Expected more than one match");
+    } catch(IllegalStateException e) {
+      // expected
+    }
+    assertEquals(0, RagnarDB.getConnectionPool().getActiveCount());
+  }
+
+  @Test
+  public void rowsAreReadWithTypedColumnReaders() throws SQLException {
+    SQLTableTypeInfo ti = createContacts();
+    IType contact = TypeSystem.getByFullNameIfValid("ragnardb.foo.Users.Contact");
+    SQLQuery<SQLRecord> all = (SQLQuery<SQLRecord>) ti.getProperty("All").getAccessor().getValue(null);
+
+    List<SQLRecord> contacts = new ArrayList<>();
+    for(SQLRecord record : all) {
+      contacts.add(record);
+    }
+    assertEquals(3, contacts.size());
+    for(SQLRecord record : contacts) {
+      // bigint and int columns come back as Long and Integer, each row with its own values
+      assertTrue(record.getRawValue("id") instanceof Long);
+      assertTrue(record.getRawValue("Age") instanceof Integer);
+      assertFalse(record.isDirty());
+    }
+    assertEquals(new HashSet<>(Arrays.asList("Carson", "Scott", "Kyle")),
+                 contacts.stream().map(c -> c.getRawValue("FirstName").toString().trim()).collect(Collectors.toSet()));
+    assertEquals(Arrays.asList(39, 46, 46),
+                 contacts.stream().map(c -> (Integer) c.getRawValue("Age")).sorted().collect(Collectors.toList()));
+
+    // a single picked column is read through the same plan
+    List<Object> ages = new ArrayList<>();
+    for(Object age : all.pick(new PropertyReference<>(contact, "Age"))) {
+      ages.add(age);
+    }
+    assertEquals(3, ages.size());
+    assertTrue(ages.stream().allMatch(age -> age instanceof Integer));
+  }
+
+  @Test
+  public void closingAStreamReleasesItsConnection() throws SQLException {
+    SQLTableTypeInfo ti = createContacts();
+    SQLQuery<SQLRecord> all = (SQLQuery<SQLRecord>) ti.getProperty("All").getAccessor().getValue(null);
+
+    try(Stream<SQLRecord> contacts = all.fetchSize(1).stream()) {
+      assertTrue(contacts.findFirst().isPresent());
+      assertEquals(1, RagnarDB.getConnectionPool().getActiveCount());
+    }
+    assertEquals(0, RagnarDB.getConnectionPool().getActiveCount());
+
+    try(Stream<SQLRecord> contacts = all.stream()) {
+      assertEquals(3, contacts.count());
+    }
+    assertEquals(0, RagnarDB.getConnectionPool().getActiveCount());
+  }
+
+  @Test
+  public void cursorsRecordTheRowsTheyFetch() throws SQLException {
+    SQLTableTypeInfo ti = createContacts();
+    SQLQuery<SQLRecord> all = (SQLQuery<SQLRecord>) ti.getProperty("All").getAccessor().getValue(null);
+    RagnarDB.getQueryMetrics().reset();
+
+    int count = 0;
+    for(SQLRecord contact : all) {
+      count++;
+    }
+    try(Stream<SQLRecord> contacts = all.fetchSize(1).stream()) {
+      assertTrue(contacts.findFirst().isPresent());
+    }
+    assertEquals(3, count);
+    assertEquals(4, RagnarDB.getQueryMetrics().getShape(all.getSQLString()).getRowsFetched());
+    assertEquals(2, RagnarDB.getQueryMetrics().getShape(all.getSQLString()).getExecutions());
+  }
+
+  @Test
+  public void pagesSeekAfterTheLastResult() throws SQLException {
+    SQLTableTypeInfo ti = createContacts();
+    IPropertyInfo age = ti.getProperty("Age");
+    IPropertyInfo firstName = ti.getProperty("FirstName");
+    SQLQuery<SQLRecord> all = (SQLQuery<SQLRecord>) ti.getProperty("All").getAccessor().getValue(null);
+    SQLQuery<SQLRecord> byAge = all.orderBy(SQLConstraint.direction("desc", age), SQLConstraint.direction("asc", firstName));
+
+    List<String> names = new ArrayList<>();
+    int pages = 0;
+    for(SQLPage<SQLRecord> page : byAge.pages(2)) {
+      pages++;
+      for(SQLRecord record : page.getResults()) {
+        names.add(record.getRawValue("FirstName").toString().trim());
+      }
+    }
+    assertEquals(2, pages);
+    assertEquals(Arrays.asList("Kyle", "Scott", "Carson"), names);
+
+    SQLPage<SQLRecord> first = byAge.page(1);
+    assertTrue(first.hasNext());
+    assertEquals(46, first.getNextCursor().get(0));
+    SQLRecord scott = byAge.pageAfter(first.getResults().get(0)).first();
+    assertEquals("Scott", scott.getRawValue("FirstName").toString().trim());
+    assertFalse(byAge.pageAfter(scott).page(5).hasNext());
+    assertEquals(1, byAge.pageAfter(scott).page(5).getResults().size());
+
+    SQLQuery<SQLRecord> byAgeAscending = all.orderBy(SQLConstraint.direction("asc", age), SQLConstraint.direction("asc", firstName));
+    assertEquals("Kyle", byAgeAscending.seekAfter(39, "Carson").first().getRawValue("FirstName").toString().trim());
+    assertEquals(0, RagnarDB.getConnectionPool().getActiveCount());
+  }
+
+  @Test
+  public void updateAndDeleteRunOneStatement() throws SQLException {
+    SQLTableTypeInfo ti = createContacts();
+    IType contact = ti.getOwnersType();
+    IPropertyInfo age = ti.getProperty("Age");
+    SQLQuery<SQLRecord> all = (SQLQuery<SQLRecord>) ti.getProperty("All").getAccessor().getValue(null);
+    SQLQuery<SQLRecord> fortySix = all.where(SQLConstraint.isComparator(age, 46, "="));
+
+    assertEquals(2, fortySix.set(new PropertyReference<Object, Integer>(contact, "Age"), 47)
+                            .set(new PropertyReference<Object, String>(contact, "LastName"), "Gosu")
+                            .execute());
+    assertFalse(fortySix.exists());
+    assertEquals(2L, all.where(SQLConstraint.isComparator(age, 47, "=")).where(SQLConstraint.raw("LastName = ?", Arrays.asList("Gosu"))).count().first());
+
+    Map<PropertyReference, Object> values = new HashMap<>();
+    values.put(new PropertyReference<>(contact, "Age"), 40);
+    assertEquals(1, all.where(SQLConstraint.isComparator(age, 39, "=")).update(values));
+    assertEquals(0, all.where(SQLConstraint.isComparator(age, 39, "=")).update(values));
+
+    assertEquals(2, all.where(SQLConstraint.isComparator(age, 47, "=")).delete());
+    assertEquals(0, all.where(SQLConstraint.isComparator(age, 47, "=")).delete());
+    assertEquals(1, RagnarDB.count("CONTACTS"));
+  }
+
+  @Test
+  public void includeLoadsReferencesUpFront() throws SQLException {
+    createStates();
+    IType contact = TypeSystem.getByFullNameIfValid("ragnardb.foo.Main.Contact");
+    SQLTableTypeInfo ti = (SQLTableTypeInfo) contact.getTypeInfo();
+    IPropertyInfo state = ti.getProperty("State");
+    SQLQuery<SQLRecord> all = (SQLQuery<SQLRecord>) ti.getProperty("All").getAccessor().getValue(null);
+
+    List<SQLRecord> contacts = new ArrayList<>();
+    for(SQLRecord record : all.include(new PropertyReference<>(contact, "State"))) {
+      contacts.add(record);
+    }
+    // the states were loaded with the contacts, so reading them doesn't go back to the database
+    RagnarDB.execStatement("DELETE FROM STATES");
+
+    Map<String, Object> statesByContact = new HashMap<>();
+    for(SQLRecord record : contacts) {
+      SQLQuery<SQLRecord> states = (SQLQuery<SQLRecord>) state.getAccessor().getValue(record);
+      SQLRecord first = states.first();
+      statesByContact.put(record.getRawValue("first_name").toString().trim(), first == null ? null : first.getRawValue("name"));
+    }
+    assertEquals("California", statesByContact.get("Carson"));
+    assertEquals("Oregon", statesByContact.get("Scott"));
+    assertEquals("California", statesByContact.get("Kyle"));
+    assertNull(statesByContact.get("Nobody"));
+
+    // changing the key drops the loaded reference
+    contacts.get(0).setRawValue("state_id", 2);
+    assertNull(((SQLQuery<SQLRecord>) state.getAccessor().getValue(contacts.get(0))).first());
+  }
+
+  @Test
+  public void referencesAreLoadedForTheWholeBatchOnFirstRead() throws SQLException {
+    createStates();
+    IType contact = TypeSystem.getByFullNameIfValid("ragnardb.foo.Main.Contact");
+    SQLTableTypeInfo ti = (SQLTableTypeInfo) contact.getTypeInfo();
+    IPropertyInfo state = ti.getProperty("State");
+    SQLQuery<SQLRecord> all = (SQLQuery<SQLRecord>) ti.getProperty("All").getAccessor().getValue(null);
+
+    List<SQLRecord> contacts = new ArrayList<>();
+    for(SQLRecord record : all) {
+      contacts.add(record);
+    }
+    assertNull(contacts.get(0).getLoadedReference("State"));
+    assertNotNull(((SQLQuery<SQLRecord>) state.getAccessor().getValue(contacts.get(0))).first());
+
+    // the first read loaded the states of every contact in the batch
+    RagnarDB.execStatement("DELETE FROM STATES");
+    for(SQLRecord record : contacts) {
+      assertNotNull(record.getLoadedReference("State"));
+    }
+    SQLRecord kyle = contacts.stream().filter(c -> c.getRawValue("first_name").toString().trim().equals("Kyle")).findFirst().get();
+    assertEquals("California", ((SQLQuery<SQLRecord>) state.getAccessor().getValue(kyle)).first().getRawValue("name"));
+  }
+
+  @Test
+  public void referencesAreLoadedOnTheConnectionOfTheCursor() throws SQLException {
+    createStates();
+    IType contact = TypeSystem.getByFullNameIfValid("ragnardb.foo.Main.Contact");
+    SQLTableTypeInfo ti = (SQLTableTypeInfo) contact.getTypeInfo();
+    IPropertyInfo state = ti.getProperty("State");
+    SQLQuery<SQLRecord> all = (SQLQuery<SQLRecord>) ti.getProperty("All").getAccessor().getValue(null);
+
+    ConnectionPool pool = RagnarDB.getConnectionPool();
+    int maxSize = pool.getMaxSize();
+    long maxWait = pool.getMaxWait();
+    int batchSize = RagnarDB.getBatchSize();
+    pool.setMaxSize(1);
+    pool.setMaxWait(100);
+    // smaller than the result, so the references are loaded while the cursor still holds its connection
+    RagnarDB.setBatchSize(2);
+    try {
+      Map<String, Object> statesByContact = new HashMap<>();
+      for(SQLRecord record : all.fetchSize(1)) {
+        SQLRecord first = ((SQLQuery<SQLRecord>) state.getAccessor().getValue(record)).first();
+        statesByContact.put(record.getRawValue("first_name").toString().trim(), first == null ? null : first.getRawValue("name"));
+      }
+      assertEquals("California", statesByContact.get("Carson"));
+      assertEquals("Oregon", statesByContact.get("Scott"));
+      assertNull(statesByContact.get("Nobody"));
+      assertEquals(0, pool.getActiveCount());
+    } finally {
+      pool.setMaxSize(maxSize);
+      pool.setMaxWait(maxWait);
+      RagnarDB.setBatchSize(batchSize);
+    }
+  }
+
+  @Test
+  public void recordsWithReferencesAreStreamedUntilAReferenceIsRead() throws SQLException {
+    createStates();
+    SQLTableTypeInfo ti = (SQLTableTypeInfo) TypeSystem.getByFullNameIfValid("ragnardb.foo.Main.Contact").getTypeInfo();
+    SQLQuery<SQLRecord> all = (SQLQuery<SQLRecord>) ti.getProperty("All").getAccessor().getValue(null);
+    RagnarDB.getQueryMetrics().reset();
+
+    try(Stream<SQLRecord> contacts = all.stream()) {
+      assertTrue(contacts.findFirst().isPresent());
+    }
+    assertEquals(1, RagnarDB.getQueryMetrics().getShape(all.getSQLString()).getRowsFetched());
+  }
+
+  @Test
+  public void foreignKeysAreIndexedOncePerDdl() {
+    ISQLDdlType main = (ISQLDdlType) TypeSystem.getByFullNameIfValid("ragnardb.foo.Main");
+    SQLForeignKeyGraph foreignKeys = main.getForeignKeys();
+    assertSame(foreignKeys, main.getForeignKeys());
+    assertEquals(1, foreignKeys.getReferencesTo("states").size());
+    assertEquals("contacts", foreignKeys.getReferencesTo("states").get(0).getTable().getTableName());
+    assertEquals("state_id", foreignKeys.getReferencesFrom("contacts").get(0).getColumn().getColumnName());
+    assertTrue(foreignKeys.getReferencesTo("company").isEmpty());
+
+    SQLTableTypeInfo state = (SQLTableTypeInfo) main.getInnerClass("State").getTypeInfo();
+    SQLTableTypeInfo company = (SQLTableTypeInfo) main.getInnerClass("Company").getTypeInfo();
+    assertTrue(state.getProperty("Contact") instanceof SQLReferencePropertyInfo);
+    assertTrue(state.hasReferences());
+    assertFalse(company.hasReferences());
+  }
+
+  @Test
+  public void tableMembersAreGeneratedOnDemand() {
+    ISQLDdlType main = (ISQLDdlType) TypeSystem.getByFullNameIfValid("ragnardb.foo.Main");
+    SQLTableTypeInfo contact = (SQLTableTypeInfo) main.getInnerClass("Contact").getTypeInfo();
+
+    IPropertyInfo firstName = contact.getProperty("FirstName");
+    assertSame(firstName, contact.getProperty("FirstName"));
+    IMethodInfo findByFirstName = contact.getMethod("findByFirstName", JavaTypes.STRING());
+    assertNotNull(findByFirstName);
+    assertNull(contact.getMethod("findByNothing", JavaTypes.STRING()));
+
+    // the full lists hand out the members already generated
+    assertTrue(contact.getProperties().contains(firstName));
+    assertTrue(contact.getMethods().contains(findByFirstName));
+    assertSame(findByFirstName, contact.getMethod("findByFirstName", JavaTypes.STRING()));
+    assertEquals(contact.getProperties().size(), contact.getProperties().stream().map(IPropertyInfo::getName).distinct().count());
+  }
+
+  private static void createStates() throws SQLException {
+    RagnarDB.setDBUrl("jdbc:h2:mem:sqlpluginreferences;DB_CLOSE_DELAY=-1");
+    RagnarDB.execStatement("CREATE TABLE IF NOT EXISTS STATES (id int, name varchar(255))");
+    RagnarDB.execStatement("CREATE TABLE IF NOT EXISTS CONTACTS (id bigint auto_increment, user_id int, company_id int, first_name nchar(50), last_name nchar(50), age int, state_id int)");
+    RagnarDB.execStatement("DELETE FROM STATES");
+    RagnarDB.execStatement("DELETE FROM CONTACTS");
+    RagnarDB.execStatement("INSERT INTO STATES (id, name) VALUES (1, 'California'), (2, 'Oregon')");
+    RagnarDB.execStatement("INSERT INTO CONTACTS (first_name, state_id) VALUES ('Carson', 1), ('Scott', 2), ('Kyle', 1), ('Nobody', null)");
+  }
+
+  private static SQLTableTypeInfo createContacts() throws SQLException {
+    RagnarDB.setDBUrl("jdbc:h2:mem:sqlplugintest;DB_CLOSE_DELAY=-1");
+    RagnarDB.execStatement("CREATE TABLE IF NOT EXISTS CONTACTS (id bigint auto_increment, UserId int, FirstName nchar(50), LastName nchar(50), Age int)");
+    RagnarDB.execStatement("DELETE FROM CONTACTS");
+    RagnarDB.execStatement("INSERT INTO CONTACTS (FirstName, Age) VALUES ('Carson', 39), ('Scott', 46), ('Kyle', 46)");
+
+    ISQLTableType contact = (ISQLTableType) TypeSystem.getByFullNameIfValid("ragnardb.foo.Users.Contact");
+    return (SQLTableTypeInfo) contact.getTypeInfo();
+  }
+
   @Test
   @Ignore
   public void getRawSQL() {
@@ -12,6 +12,9 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Savepoint;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 
 public class RuntimeBootstrapTest
 {
@@ -155,4 +158,181 @@ public class RuntimeBootstrapTest
 
   }
 
-}
\ No newline at end of file
+  @Test
+  public void updateWritesOnlyChangedColumns() throws SQLException
+  {
+    SQLRecord thing = new SQLRecord( "CONTACTS", "id" );
+    thing.setRawValue( "first_name", "Carson" );
+    thing.setRawValue( "last_name", "Gross" );
+    thing.create();
+    Assert.assertFalse( thing.isDirty() );
+
+    SQLRecord record = SQLRecord.read( "CONTACTS", "id", thing.getRawValue( "id" ) );
+    Assert.assertFalse( record.isDirty() );
+    RagnarDB.execStatement( "UPDATE CONTACTS SET last_name = 'McKinney'" );
+
+    record.setRawValue( "first_name", "Carson" );
+    Assert.assertFalse( record.isDirty() );
+    record.setRawValue( "first_name", "Scott" );
+    Assert.assertTrue( record.isDirty( "FIRST_NAME" ) );
+    Assert.assertFalse( record.isDirty( "last_name" ) );
+    record.update();
+    Assert.assertFalse( record.isDirty() );
+
+    record = SQLRecord.read( "CONTACTS", "id", thing.getRawValue( "id" ) );
+    Assert.assertEquals( "Scott", record.getRawValue( "first_name" ) );
+    Assert.assertEquals( "McKinney", record.getRawValue( "last_name" ) );
+  }
+
+  @Test
+  public void updateRejectsAChangedId() throws SQLException
+  {
+    SQLRecord thing = new SQLRecord( "CONTACTS", "id" );
+    thing.setRawValue( "first_name", "Carson" );
+    thing.create();
+
+    SQLRecord record = SQLRecord.read( "CONTACTS", "id", thing.getRawValue( "id" ) );
+    record.setRawValue( "id", ((Number)thing.getRawValue( "id" )).longValue() + 100 );
+    try
+    {
+      record.update();
+      Assert.fail( "Expected the id change to be rejected" );
+    }
+    catch( IllegalStateException e )
+    {
+      // expected
+    }
+    Assert.assertTrue( record.isDirty( "id" ) );
+    Assert.assertNotNull( SQLRecord.read( "CONTACTS", "id", thing.getRawValue( "id" ) ) );
+  }
+
+  @Test
+  public void saveSkipsCleanRecords() throws SQLException
+  {
+    SQLRecord thing = new SQLRecord( "CONTACTS", "id" );
+    thing.setRawValue( "first_name", "Carson" );
+    Assert.assertTrue( thing.save() );
+    Assert.assertEquals( 1, RagnarDB.count( "CONTACTS" ) );
+
+    SQLRecord record = SQLRecord.read( "CONTACTS", "id", thing.getRawValue( "id" ) );
+    RagnarDB.execStatement( "DELETE FROM CONTACTS" );
+
+    // neither record has changed, so neither save goes to the database
+    Assert.assertTrue( thing.save() );
+    Assert.assertTrue( record.save() );
+    Assert.assertEquals( 0, RagnarDB.count( "CONTACTS" ) );
+  }
+
+  @Test
+  public void slottedRecordsWork() throws SQLException
+  {
+    ModelConfig config = new ModelConfig( "CONTACTS", "id", Arrays.asList( "id", "user_id", "first_name", "last_name", "age" ) );
+    ColumnLayout layout = config.getColumnLayout();
+    int age = layout.slotOf( "age" );
+    Assert.assertEquals( 4, age );
+    Assert.assertEquals( age, layout.slotOf( "AGE" ) );
+    Assert.assertEquals( age, layout.slotOf( "Age" ) );
+    Assert.assertEquals( -1, layout.slotOf( "nickname" ) );
+
+    SQLRecord thing = new SQLRecord( "CONTACTS", "id" );
+    thing.setRawValue( "first_name", "Carson" );
+    thing.setConfig( config );
+    thing.setRawValue( layout, age, "age", 39 );
+    Assert.assertEquals( "Carson", thing.getRawValue( "FIRST_NAME" ) );
+    Assert.assertEquals( 39, thing.getRawValue( "age" ) );
+    Assert.assertTrue( thing.isDirty( "first_name" ) );
+    thing.create();
+
+    SQLRecord record = new SQLRecord( config );
+    record.setRawValue( "id", thing.getRawValue( "id" ) );
+    record.setRawValue( "last_name", "Gross" );
+    record.update();
+
+    record = SQLRecord.read( "CONTACTS", "id", thing.getRawValue( "id" ) );
+    Assert.assertEquals( "Carson", record.getRawValue( "first_name" ) );
+    Assert.assertEquals( "Gross", record.getRawValue( "last_name" ) );
+    Assert.assertEquals( 39, record.getRawValue( layout, age, "age" ) );
+  }
+
+  @Test
+  public void batchCreateWorks() throws SQLException
+  {
+    Assert.assertEquals( 0, RagnarDB.count( "CONTACTS" ) );
+
+    List<SQLRecord> contacts = new ArrayList<>();
+    for( int i = 0; i < 5; i++ )
+    {
+      SQLRecord thing = new SQLRecord( "CONTACTS", "id" );
+      thing.setRawValue( "first_name", "Carson" + i );
+      thing.setRawValue( "age", 30 + i );
+      contacts.add( thing );
+    }
+    SQLRecord noAge = new SQLRecord( "CONTACTS", "id" );
+    noAge.setRawValue( "first_name", "Scott" );
+    contacts.add( noAge );
+
+    Assert.assertEquals( 6, SQLRecord.createAll( contacts, 2 ) );
+    Assert.assertEquals( 6, RagnarDB.count( "CONTACTS" ) );
+
+    HashSet<Object> ids = new HashSet<>();
+    for( SQLRecord contact : contacts )
+    {
+      SQLRecord record = SQLRecord.read( "CONTACTS", "id", contact.getRawValue( "id" ) );
+      Assert.assertNotNull( record );
+      Assert.assertEquals( contact.getRawValue( "first_name" ), record.getRawValue( "first_name" ) );
+      ids.add( contact.getRawValue( "id" ) );
+    }
+    Assert.assertEquals( 6, ids.size() );
+  }
+
+  @Test
+  public void batchCreateIsAllOrNothing() throws SQLException
+  {
+    SQLRecord good = new SQLRecord( "CONTACTS", "id" );
+    good.setRawValue( "first_name", "Carson" );
+    SQLRecord bad = new SQLRecord( "CONTACTS", "id" );
+    bad.setRawValue( "no_such_column", "Gross" );
+
+    try
+    {
+      SQLRecord.createAll( Arrays.asList( good, bad ) );
+      Assert.fail( "Expected the insert into a missing column to fail" );
+    }
+    catch( Exception e )
+    {
+      Assert.assertTrue( e instanceof SQLException );
+    }
+    Assert.assertEquals( 0, RagnarDB.count( "CONTACTS" ) );
+    Assert.assertEquals( 0, RagnarDB.getConnectionPool().getActiveCount() );
+  }
+
+  @Test
+  public void createAndCreateAllInsertEveryRow() throws SQLException
+  {
+    // more rows than one batch, so createAll has to send several
+    int rows = 1000;
+
+    for( SQLRecord contact : newContacts( rows ) )
+    {
+      contact.create();
+    }
+    Assert.assertEquals( rows, RagnarDB.count( "CONTACTS" ) );
+
+    SQLRecord.createAll( newContacts( rows ) );
+    Assert.assertEquals( rows * 2, RagnarDB.count( "CONTACTS" ) );
+  }
+
+  private static List<SQLRecord> newContacts( int count )
+  {
+    List<SQLRecord> contacts = new ArrayList<>( count );
+    for( int i = 0; i < count; i++ )
+    {
+      SQLRecord thing = new SQLRecord( "CONTACTS", "id" );
+      thing.setRawValue( "first_name", "Carson" );
+      thing.setRawValue( "last_name", "Gross" );
+      thing.setRawValue( "age", i );
+      contacts.add( thing );
+    }
+    return contacts;
+  }
+}
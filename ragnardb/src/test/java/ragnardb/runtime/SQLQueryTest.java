@@ -0,0 +1,87 @@
+package ragnardb.runtime;
+
+import gw.lang.reflect.IPropertyInfo;
+import gw.lang.reflect.IType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class SQLQueryTest
+{
+  private static final ITypeToSQLMetadata METADATA = new ITypeToSQLMetadata()
+  {
+    @Override
+    public String getTableForType( IType type )
+    {
+      return "CONTACTS";
+    }
+
+    @Override
+    public String getColumnForProperty( IPropertyInfo pi )
+    {
+      return "age";
+    }
+  };
+
+  @Test
+  public void argsFollowSqlOrder()
+  {
+    SQLQuery<Object> query = new SQLQuery<>( METADATA, null )
+      .where( SQLConstraint.raw( "first_name = ?", Collections.singletonList( "Carson" ) ) )
+      .where( SQLConstraint.isComparator( null, 39, ">" )
+                .orElse( SQLConstraint.isIn( null, Arrays.asList( 1, 2 ) ) ) );
+
+    Assert.assertEquals( "SELECT CONTACTS.*  FROM CONTACTS  WHERE  ( first_name = ? AND  ( age> ?  OR age IN ( ? , ?  )  )  ) ",
+                         query.getSQLString() );
+    Assert.assertEquals( Arrays.asList( "Carson", 39, 1, 2 ), query.getArgs() );
+  }
+
+  @Test
+  public void subqueryArgsAreInlined()
+  {
+    SQLQuery<Object> sub = new SQLQuery<>( METADATA, null ).where( SQLConstraint.isComparator( null, 3, "=" ) );
+    SQLQuery<Object> query = new SQLQuery<>( METADATA, null ).where( SQLConstraint.isIn( null, sub ) ).union( sub );
+
+    Assert.assertEquals( Arrays.asList( 3, 3 ), query.getArgs() );
+  }
+
+  @Test
+  public void compiledSqlIsMemoized()
+  {
+    SQLQuery<Object> query = new SQLQuery<>( METADATA, null ).where( SQLConstraint.isComparator( null, 39, "=" ) );
+    Assert.assertSame( query.getSQLString(), query.getSQLString() );
+    Assert.assertNotSame( query.getSQLString(), query.limit( 1 ).getSQLString() );
+  }
+
+  @Test
+  public void seekAfterComparesRowValues()
+  {
+    SQLQuery<Object> query = new SQLQuery<>( METADATA, null )
+      .orderBy( SQLConstraint.direction( "asc", null ), SQLConstraint.direction( "asc", null ) )
+      .seekAfter( 39, 7 );
+
+    Assert.assertEquals( "SELECT CONTACTS.*  FROM CONTACTS  WHERE  ( age , age ) > ( ? , ? )  ORDER BY age asc , age asc",
+                         query.getSQLString() );
+    Assert.assertEquals( Arrays.asList( 39, 7 ), query.getArgs() );
+  }
+
+  @Test
+  public void seekAfterExpandsMixedDirections()
+  {
+    SQLQuery<Object> query = new SQLQuery<>( METADATA, null )
+      .orderBy( SQLConstraint.direction( "desc", null ), SQLConstraint.direction( "asc", null ) )
+      .seekAfter( 39, 7 );
+
+    Assert.assertEquals( "SELECT CONTACTS.*  FROM CONTACTS  WHERE  ( ( age < ? ) OR ( age = ? AND age > ? ) )  ORDER BY age desc , age asc",
+                         query.getSQLString() );
+    Assert.assertEquals( Arrays.asList( 39, 39, 7 ), query.getArgs() );
+  }
+
+  @Test( expected = IllegalStateException.class )
+  public void seekAfterRequiresAnOrder()
+  {
+    new SQLQuery<>( METADATA, null ).seekAfter( 39 );
+  }
+}
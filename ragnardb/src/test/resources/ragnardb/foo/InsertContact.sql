@@ -0,0 +1,2 @@
+INSERT INTO Contacts (FirstName, Age)
+VALUES (@name:java.lang.String, @age:java.lang.Integer);
\ No newline at end of file
@@ -0,0 +1,2 @@
+SELECT FirstName FROM Contacts
+WHERE Age = @age:java.lang.Integer;
\ No newline at end of file
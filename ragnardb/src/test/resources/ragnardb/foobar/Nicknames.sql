@@ -0,0 +1 @@
+SELECT Nickname FROM Contacts;